@@ -1,6 +1,8 @@
 package ai;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.awt.geom.*;
 import javafx.util.Pair;
 import problem.*;
@@ -16,17 +18,29 @@ import static utility.Phase.*;
  */
 public class AI implements Utility {
 
+    /* Time limit of the time-out mode in milliseconds, a few seconds are left for writing the output. */
+    private static final long TIME_LIMIT = 115000;
+
+    /* Share of the time limit for moving boxes, the rest is for robot routes. */
+    private static final double BOX_SHARE = 0.5;
+
+    /* Number of workers routing the robot legs in parallel, a core is left to box planning. */
+    private static final int ROUTING_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
     /* The problem spec. */
     private ProblemSpec ps;
 
     /* Indicate whether or not this is running in advanced mode. */
     private boolean advancedMode;
 
-    /* Indicate if timeout is turned on. */
-    private boolean timeOut;
+    /* The deadline of the whole problem, NONE if timeout is turned off. */
+    private Deadline deadline;
 
-    /* Start time. */
-    private double startTime;
+    /* The robot roadmap, built on first use and shared by all legs. */
+    private volatile RobotRoadmap roadmap;
+
+    /* Lock of building the roadmap, so only the legs that query it wait for it. */
+    private final Object roadmapLock = new Object();
 
     /**
      * Constuctor.
@@ -37,8 +51,7 @@ public class AI implements Utility {
     private AI(ProblemSpec ps, boolean advancedMode, boolean timeOut) {
         this.ps = ps;
         this.advancedMode = advancedMode;
-        this.timeOut = timeOut;
-        startTime = System.currentTimeMillis();
+        deadline = timeOut ? Deadline.after(TIME_LIMIT) : Deadline.NONE;
     }
 
     /**
@@ -55,25 +68,44 @@ public class AI implements Utility {
         RobotConfig initialRobot = ps.getInitialRobotConfig();
 
         /* Used to store results. */
-        List<Action> actions = new ArrayList<>();
-        List<String> finalRoute = new ArrayList<>();
+        Route finalRoute = new Route();
         /* Get the initial configuration. */
-        finalRoute.add(get_initial_configuration(thisEnvironment, initialRobot));
+        finalRoute.add(initialRobot, thisEnvironment);
 
+        /* The robot is routed through the actions published so far while the boxes are planned. */
+        BlockingQueue<List<Action>> batches = new LinkedBlockingQueue<>();
+        ExecutorService router = Executors.newSingleThreadExecutor();
+        Future<Route> robotRoute = router.submit(() -> route_actions(batches, initialRobot, goals));
+        router.shutdown();
+        try {
+            solve_boxes(thisEnvironment, goals, batches);
+        } finally {
+            /* An empty batch tells the router that box planning is done. */
+            batches.add(Collections.emptyList());
+        }
+        try {
+            finalRoute.add_all(robotRoute.get());
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+        }
+        output_to_file(finalRoute, outputFile);
+        System.out.println("\nDone.");
+    }
+
+    /**
+     * Solve the box actions, each batch of actions is published to the router once it is final.
+     * @param thisEnvironment - The initial environment.
+     * @param goals - The goals.
+     * @param batches - The queue of the router.
+     */
+    private void solve_boxes(Environment thisEnvironment, List<Point2D> goals, BlockingQueue<List<Action>> batches) {
+        List<Action> actions = new ArrayList<>();
         /* First of all, solve box route using Astar. */
         System.out.println("Solve box route..");
-        thisEnvironment = TreeNodeAstar.solve(thisEnvironment, goals, PHASE_1, actions, 1000);
-        //System.out.println("Solve stage 2..");
-        //thisEnvironment = TreeNodeAstar.solve(thisEnvironment, goals, PHASE_2, actions, 1000);
-        //System.out.println("Solve stage 3..");
-        //thisEnvironment = TreeNodeAstar.solve(thisEnvironment, goals, PHASE_3, actions, 2000);
-        //System.out.println("Solve stage 4..");
-        //thisEnvironment = TreeNodeAstar.solve(thisEnvironment, goals, PHASE_4, actions, 2000);
-        //System.out.println("Solve stage 5..");
-        //thisEnvironment = TreeNodeAstar.solve(thisEnvironment, goals, PHASE_5, actions, 3000);
-        //System.out.println("Solve stage 6..");
-        //thisEnvironment = TreeNodeAstar.solve(thisEnvironment, goals, PHASE_6, actions, 3000);
-        //System.out.println("Box Stage Done.");
+        Deadline boxDeadline = deadline.share(BOX_SHARE);
+        /* Coarse to fine, the unit step is left to the further search. */
+        thisEnvironment = TreeNodeAstar.solve_phases(thisEnvironment, goals, PHASE_3, actions, 1000, boxDeadline);
+        int published = publish(actions, 0, batches);
 
         /* Check if astar has solved the problem. */
         if (!achieve_goal_environment(thisEnvironment, goals)) {
@@ -97,19 +129,29 @@ public class AI implements Utility {
             List<Environment> environments;
             int count = 1;
             for (int j : unreached) {
+                if (boxDeadline.expired()) {
+                    System.out.println("Out of time for boxes, keep the goals reached so far.");
+                    break;
+                }
+                /* Each goal left gets an even share of the time left. */
+                Deadline goalDeadline = boxDeadline.share(1.0 / (unreached.size() - count + 1));
                 /* Try solve with Astar first */
                 System.out.printf("Further search for %d start..\n", count++);
-                Environment goalEnvironment = BoxNodeAstar.solve(thisEnvironment, goals.get(j), actions, j, 250);
+                Environment goalEnvironment = BoxNodeAstar.solve(thisEnvironment, goals.get(j), actions, j, 250, goalDeadline);
                 if (goalEnvironment != null) {
                     System.out.println("Solve with further Astar, RRT not required for this goal.");
                     thisEnvironment = goalEnvironment;
+                    published = publish(actions, published, batches);
                     continue;
                 }
                 List<Integer> toBemoved = new ArrayList<>();
                 toBemoved.add(j);
                 brrt = new BoxSampleRRT(toBemoved, thisEnvironment, goals, 0.05);
+                /* Goal bias, the goal is only reached within a few unit steps. */
+                brrt.set_sample_strategy(SampleStrategy.GOAL_BIAS);
+                brrt.set_deadline(goalDeadline);
                 System.out.println("RRT start..");
-                environments = brrt.solve(50000);
+                environments = brrt.solve_parallel(50000, PARALLEL_TREES);
                 System.out.println("RRT finishes.");
                 /* Check if the 2d RRT is successful. */
                 if (advancedMode && environments == null) {
@@ -130,7 +172,9 @@ public class AI implements Utility {
                             }
                         }
                         brrt = new BoxSampleRRT(toBemoved, thisEnvironment, goals, 0.1);
-                        environments = brrt.solve( 100000);
+                        brrt.set_sample_strategy(SampleStrategy.GOAL_BIAS);
+                        brrt.set_deadline(goalDeadline);
+                        environments = brrt.solve_parallel(100000, PARALLEL_TREES);
                         System.out.println("4d RRT search complete.");
                     }
                 }
@@ -146,14 +190,14 @@ public class AI implements Utility {
                     int totalSize = environments.size();
                     System.out.printf("RRT works, calculate actions for robot, total of %d size\n", totalSize);
                     for (Environment e : environments) {
-                        if (!BoxNodeAstar.solve(current, e, temp, toBemoved.get(0), 10000)) {
+                        if (!BoxNodeAstar.solve(current, e, temp, toBemoved.get(0), 10000, goalDeadline)) {
                             trigger = true;
                             break;
                         }
                         if (toBemoved.size() > 1) {
                             if (currentIndex < totalSize) {
-                                current.movingObjects.set(toBemoved.get(0), e.movingObjects.get(toBemoved.get(0)));
-                                if (!BoxNodeAstar.solve(current, e, temp, toBemoved.get(1), 10000)) {
+                                current = new Environment(current, toBemoved.get(0), e.movingObjects.get(toBemoved.get(0)).getPos());
+                                if (!BoxNodeAstar.solve(current, e, temp, toBemoved.get(1), 10000, goalDeadline)) {
                                     trigger = true;
                                     break;
                                 }
@@ -169,55 +213,170 @@ public class AI implements Utility {
                     System.out.println("\nThis RRT is done");
                     actions.addAll(temp);
                     thisEnvironment = current;
+                    published = publish(actions, published, batches);
                 }
             }
         }
-        /* Box planning is done, plan robot. */
+    }
+
+    /**
+     * Publish the actions not published yet as a batch.
+     * @param actions - The actions.
+     * @param from - The number of actions published before.
+     * @param batches - The queue of the router.
+     * @return - The number of actions published.
+     */
+    private static int publish(List<Action> actions, int from, BlockingQueue<List<Action>> batches) {
+        if (from < actions.size()) {
+            batches.add(new ArrayList<>(actions.subList(from, actions.size())));
+        }
+        return actions.size();
+    }
+
+    /**
+     * Solve the robot routes of the published actions on a pool of workers and stitch them in order.
+     * Each leg starts from the robot config after the push before, so the legs don't depend on each other
+     * and are started as soon as their batch is taken, until an empty batch is taken.
+     * The route is kept up to the last action solved, the legs after a failed one are dropped.
+     * @param batches - The queue of published actions.
+     * @param initialRobot - The initial robot config.
+     * @param goals - The goals, only used for error information.
+     * @return - The route.
+     * @throws InterruptedException - When interrupted while waiting for a batch.
+     */
+    private Route route_actions(BlockingQueue<List<Action>> batches, RobotConfig initialRobot, List<Point2D> goals)
+            throws InterruptedException {
         System.out.println("Start to calculate robot routes..");
-        RobotConfig current;
-        current = initialRobot;
+        ExecutorService pool = Executors.newFixedThreadPool(ROUTING_THREADS);
+        /* Set when a leg fails, so the legs not started yet are skipped. */
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<Route>> legs = new ArrayList<>();
+        RobotConfig current = initialRobot;
+        for (List<Action> batch = batches.take(); !batch.isEmpty(); batch = batches.take()) {
+            for (Action action : batch) {
+                RobotConfig start = current;
+                legs.add(pool.submit(() -> failed.get() ? null : route_leg(action, start, goals)));
+                current = action.afterPushPosition;
+            }
+        }
+        pool.shutdown();
+        Route finalRoute = new Route();
         int count = 1;
-        int size = actions.size();
-        for (Action action : actions) {
-
-            if (timeOut && System.currentTimeMillis() - startTime > 120000) {
-                System.out.println("\nTimeout.");
-                break;
+        try {
+            for (Future<Route> leg : legs) {
+                Route route = leg.get();
+                if (route == null) {
+                    failed.set(true);
+                    if (deadline.expired()) {
+                        System.out.println("\nTimeout.");
+                    }
+                    break;
+                }
+                System.out.printf("%d/%d\r", count++, legs.size());
+                finalRoute.add_all(route);
             }
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            failed.set(true);
+        }
+        pool.shutdownNow();
+        return finalRoute;
+    }
 
-            System.out.printf("%d/%d\r", count++, size);
-            if (!RobotNodeAstar.solve(action, current, finalRoute, 10000)) {
-                /* Robot Astar didn't solve it within a given step, so conduct RRT instead. */
+    /**
+     * Solve the robot route of an action, from the given robot config to the push position and through the push.
+     * @param action - The action.
+     * @param current - The robot config before the action.
+     * @param goals - The goals, only used for error information.
+     * @return - The route, null if not solved.
+     */
+    private Route route_leg(Action action, RobotConfig current, List<Point2D> goals) {
+        if (deadline.expired()) {
+            return null;
+        }
+        Route route = new Route();
+        /* Long segments first, unit step walking only if they can't reach. */
+        if (!RobotSegmentAstar.solve(action, current, route, 2000, deadline) &&
+                !RobotNodeAstar.solve(action, current, route, 60000, deadline)) {
+            if (deadline.expired()) {
+                return null;
+            }
+            /* Robot Astar didn't solve it within a given step, so query the roadmap, built once for all actions. */
+            List<RobotConfig> waypoints = get_roadmap(action.environment).solve(current, action.pushPosition, action.environment);
+            if (waypoints == null || !follow_waypoints(current, waypoints, action.environment, route, deadline)) {
+                /* The roadmap didn't solve it either, so conduct RRT instead. */
                 System.out.println("\nRRT start");
                 RobotSampleRRT rrt = new RobotSampleRRT(current, action.pushPosition, action.environment, 0.05);
-                List<RobotConfig> segments = rrt.solve(100000);
+                rrt.set_deadline(deadline);
+                List<RobotConfig> segments = rrt.solve_parallel(100000, PARALLEL_TREES);
                 System.out.println("RRT finish");
                 if (segments == null) {
-                    print_error_information(action.environment, goals, current, action.pushPosition);
-                    System.out.println("RRT error.");
-                    break;
-                } else {
-                    for (RobotConfig rc : segments) {
-                        if (!RobotNodeAstar.solve(current, rc, action.environment, finalRoute, 10000)) {
-                            print_error_information(action.environment, goals, current, rc);
-                            System.out.println("2nd Astar error.");
-                            break;
-                        }
-                        current = rc;
-                    }
-                    if (!RobotNodeAstar.solve(current, action.pushPosition, action.environment, finalRoute, 10000)) {
+                    if (!deadline.expired()) {
                         print_error_information(action.environment, goals, current, action.pushPosition);
-                        System.out.println("2nd Astar final route error.");
+                        System.out.println("RRT error.");
+                    }
+                    return null;
+                }
+                for (RobotConfig rc : segments) {
+                    if (!RobotNodeAstar.solve(current, rc, action.environment, route, 60000, deadline)) {
+                        print_error_information(action.environment, goals, current, rc);
+                        System.out.println("2nd Astar error.");
                         break;
                     }
+                    current = rc;
+                }
+                if (!RobotNodeAstar.solve(current, action.pushPosition, action.environment, route, 60000, deadline)) {
+                    print_error_information(action.environment, goals, current, action.pushPosition);
+                    System.out.println("2nd Astar final route error.");
+                    return null;
                 }
             }
-            /* For the push itself, it doesn't require ai to search, so compute action fast. */
-            finalRoute.addAll(solve_robot_route_fast(action));
-            current = action.afterPushPosition;
         }
-        output_to_file(finalRoute, outputFile);
-        System.out.println("\nDone.");
+        /* For the push itself, it doesn't require ai to search, so compute action fast. */
+        solve_robot_route_fast(action, route);
+        return route;
+    }
+
+    /**
+     * Get the robot roadmap, built on first use and shared by all legs.
+     * @param environment - The environment to build the roadmap in.
+     * @return - The roadmap.
+     */
+    private RobotRoadmap get_roadmap(Environment environment) {
+        RobotRoadmap result = roadmap;
+        if (result == null) {
+            synchronized (roadmapLock) {
+                result = roadmap;
+                if (result == null) {
+                    result = new RobotRoadmap(environment);
+                    roadmap = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Solve the robot route through the given waypoints by robot astar.
+     * Nothing is added to the route unless every waypoint is reached.
+     * @param current - The current robot config.
+     * @param waypoints - The waypoints, the last one is the goal.
+     * @param environment - The environment.
+     * @param finalRoute - The route, the steps are appended to it.
+     * @param deadline - The deadline.
+     * @return - True if solved, false otherwise.
+     */
+    private static boolean follow_waypoints(RobotConfig current, List<RobotConfig> waypoints, Environment environment,
+                                            Route finalRoute, Deadline deadline) {
+        Route route = new Route();
+        for (RobotConfig rc : waypoints) {
+            if (!RobotNodeAstar.solve(current, rc, environment, route, 60000, deadline)) {
+                return false;
+            }
+            current = rc;
+        }
+        finalRoute.add_all(route);
+        return true;
     }
 
     /**
@@ -246,7 +405,7 @@ public class AI implements Utility {
                 System.out.println("Warning: Advanced mode enables 4d RRT search, may result in a large time.");
                 ai = new AI(ps, true, false);
             } else if (args.length == 3 && args[2].equals("--time-out")) {
-                System.out.println("Running up to 120 seconds.");
+                System.out.printf("Running up to %d seconds.\n", TIME_LIMIT / 1000);
                 ai = new AI(ps, false, true);
             } else {
                 ai = new AI(ps, false, false);
@@ -2,7 +2,6 @@ package boxAstar;
 
 import java.util.*;
 import java.awt.geom.*;
-import javafx.util.Pair;
 import problem.*;
 import utility.*;
 import static utility.Direction.*;
@@ -24,6 +23,15 @@ public class BoxNode implements Utility {
     /* The cost to goal of this state. */
     private double cost;
 
+    /* The canonical key of this state. */
+    private StateKey key;
+
+    /* The state this one is reached from, null for the start. */
+    private BoxNode parent;
+
+    /* The action from the parent to this state, null for the start. */
+    private Action action;
+
     /**
      * Constructor.
      * @param state - Start environment.
@@ -35,6 +43,7 @@ public class BoxNode implements Utility {
         this.goal = goal;
         this.moved = moved;
         update_cost();
+        key = new StateKey(state.movingObjects.get(moved));
     }
 
     /**
@@ -45,6 +54,22 @@ public class BoxNode implements Utility {
         return cost;
     }
 
+    /**
+     * Get the state this one is reached from.
+     * @return - The parent state, null for the start.
+     */
+    public BoxNode parent() {
+        return parent;
+    }
+
+    /**
+     * Get the action from the parent to this state.
+     * @return - The action, null for the start.
+     */
+    public Action action() {
+        return action;
+    }
+
     /**
      * Update the cost of this state, called in constructor.
      */
@@ -67,17 +92,7 @@ public class BoxNode implements Utility {
      */
     @Override
     public int hashCode() {
-        int result;
-        result = 0;
-        List<Box> stateMovingObjects = state.movingObjects;
-        int size = stateMovingObjects.size();
-        for (int i = 0; i < size; i++) {
-            if (moved == i) {
-                result += (i + 1) * stateMovingObjects.get(i).pos.getX() * (10000 + 10 * i);
-                result += (i + 1) * stateMovingObjects.get(i).pos.getY() * (10000 + 10 * i);
-            }
-        }
-        return result;
+        return key.hashCode();
     }
 
     /**
@@ -89,15 +104,7 @@ public class BoxNode implements Utility {
     public boolean equals(Object o) {
         if (o instanceof BoxNode) {
             BoxNode bn = (BoxNode) o;
-            List<Box> stateMovingObjects = state.movingObjects;
-            List<Box> bnMovingObjects = bn.state.movingObjects;
-            int size = stateMovingObjects.size();
-            for (int i = 0; i < size; i++) {
-                if (moved == i && is_two_pos_away(stateMovingObjects.get(i).getPos(), bnMovingObjects.get(i).getPos())) {
-                    return false;
-                }
-            }
-            return true;
+            return key.equals(bn.key);
         }
         return false;
     }
@@ -119,32 +126,16 @@ public class BoxNode implements Utility {
         return true;
     }
 
-    /**
-     * Set the box to have the new position in the given environment.
-     * @param environment - The given environment.
-     * @param index - The index of the box that to be set.
-     * @param newPos - The new position of the box.
-     */
-    private void set_box(Environment environment, int index, Point2D newPos) {
-        List<Box> movingObjects = environment.movingObjects;
-        Box box = movingObjects.get(index);
-        if (box instanceof MovingBox) {
-            movingObjects.set(index, new MovingBox(newPos, movingObjects.get(index).getWidth()));
-        } else {
-            movingObjects.set(index, new MovingObstacle(newPos, movingObjects.get(index).getWidth()));
-        }
-    }
-
     /**
      * Set the box further in the given direction, used in get child action of astar.
      * @param index - The index of the moved box.
      * @param direction - The given direction.
-     * @param result - A result of boxNode and corresponding action.
+     * @param result - The children, each with its parent and action.
      */
-    private void set_further(int index, Direction direction, List<Pair<BoxNode, Action>> result) {
+    private void set_further(int index, Direction direction, List<BoxNode> result) {
 
-        Environment oldEnvironment = new Environment(state.movingObjects, state.staticObstacles);
-        Environment newEnvironment = new Environment(state.movingObjects, state.staticObstacles);
+        Environment oldEnvironment = state;
+        Point2D newPos = null;
 
         double startX = state.movingObjects.get(index).getPos().getX();
         double startY = state.movingObjects.get(index).getPos().getY();
@@ -158,39 +149,43 @@ public class BoxNode implements Utility {
         switch (direction) {
             case UP:
                 robotBefore = new RobotConfig(new Point2D.Double(startX + 0.5 * width, startY), 0);
-                set_box(newEnvironment, index, new Point2D.Double(startX, startY + 0.001));
+                newPos = new Point2D.Double(startX, startY + 0.001);
                 robotAfter = new RobotConfig(new Point2D.Double(startX + 0.5 * width, startY + 0.001), 0);
                 break;
             case DOWN:
                 robotBefore = new RobotConfig(new Point2D.Double(startX + 0.5 * width, startY + width), 0);
-                set_box(newEnvironment, index, new Point2D.Double(startX, startY - 0.001));
+                newPos = new Point2D.Double(startX, startY - 0.001);
                 robotAfter = new RobotConfig(new Point2D.Double(startX + 0.5 * width, startY + width - 0.001), 0);
                 break;
             case LEFT:
                 robotBefore = new RobotConfig(new Point2D.Double(startX + width, startY + 0.5 * width), 1.571);
-                set_box(newEnvironment, index, new Point2D.Double(startX - 0.001, startY));
+                newPos = new Point2D.Double(startX - 0.001, startY);
                 robotAfter = new RobotConfig(new Point2D.Double(startX + width - 0.001, startY + 0.5 * width), 1.571);
                 break;
             case RIGHT:
                 robotBefore = new RobotConfig(new Point2D.Double(startX, startY + 0.5 * width), 1.571);
-                set_box(newEnvironment, index, new Point2D.Double(startX + 0.001, startY));
+                newPos = new Point2D.Double(startX + 0.001, startY);
                 robotAfter = new RobotConfig(new Point2D.Double(startX + 0.001, startY + 0.5 * width), 1.571);
                 break;
         }
 
-        if (noCollisionForAll(oldEnvironment, newEnvironment, robotBefore, width)) {
+        /* Only the moved box and the robot are checked against the parent state. */
+        PrimitiveEnvironment primitive = oldEnvironment.get_primitive();
+        if (primitive.no_collision_for_move(index, newPos.getX(), newPos.getY(), robotBefore, width)) {
+            Environment newEnvironment = new Environment(state, index, newPos);
             BoxNode newBn = new BoxNode(newEnvironment, goal, moved);
-            Action action = new Action(oldEnvironment, index, direction, robotBefore, robotAfter);
-            result.add(new Pair<>(newBn, action));
+            newBn.parent = this;
+            newBn.action = new Action(oldEnvironment, index, direction, robotBefore, robotAfter);
+            result.add(newBn);
         }
     }
 
     /**
      * Get the children of this state.
-     * @return - A list of BoxNode and corresponding action.
+     * @return - A list of BoxNode, each with its parent and action.
      */
-    public List<Pair<BoxNode, Action>> get_children() {
-        List<Pair<BoxNode, Action>> result = new ArrayList<>();
+    public List<BoxNode> get_children() {
+        List<BoxNode> result = new ArrayList<>();
         int size = state.movingObjects.size();
 
         /* For each of the box, if it is in the moved list, get child. */
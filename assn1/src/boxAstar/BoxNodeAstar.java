@@ -2,7 +2,6 @@ package boxAstar;
 
 import java.util.*;
 import java.awt.geom.*;
-import javafx.util.Pair;
 import problem.*;
 import utility.*;
 
@@ -17,17 +16,15 @@ public class BoxNodeAstar {
     /**
      * Construct the box route for the problem.
      * @param thisState - The goal state.
-     * @param meta - The route information.
      * @return - A list of Actions that needs to be solved by robot.
      */
-    private static List<Action> construct_box_route(BoxNode thisState, Map<BoxNode, Pair<BoxNode, Action>> meta) {
+    private static List<Action> construct_box_route(BoxNode thisState) {
         List<Action> result = new ArrayList<>();
         Stack<Action> actions = new Stack<>();
         BoxNode state = thisState;
-        while (meta.get(state).getKey() != null) {
-            Pair<BoxNode, Action> parent_action = meta.get(state);
-            actions.push(parent_action.getValue());
-            state = parent_action.getKey();
+        while (state.parent() != null) {
+            actions.push(state.action());
+            state = state.parent();
         }
         int size = actions.size();
         for (int i = 0; i < size; i++) {
@@ -46,21 +43,34 @@ public class BoxNodeAstar {
      * @return - True if solved, false otherwise.
      */
     public static boolean solve(Environment start, Environment goal, List<Action> result, int moved, int maxCount) {
+        return solve(start, goal, result, moved, maxCount, Deadline.NONE);
+    }
+
+    /**
+     * Solve the transition from a given environment to a goal environment, until the deadline.
+     * @param start - The start environment.
+     * @param goal - The goal environment.
+     * @param result - The result.
+     * @param moved - The index for the box that can be moved.
+     * @param maxCount - The max computation steps.
+     * @param deadline - The deadline.
+     * @return - True if solved, false otherwise.
+     */
+    public static boolean solve(Environment start, Environment goal, List<Action> result, int moved, int maxCount,
+                                Deadline deadline) {
         BoxNode initial = new BoxNode(start, goal, moved);
 
-        Map<BoxNode, Pair<BoxNode, Action>> meta = new HashMap<>();
         Comparator<BoxNode> comparator = new BoxNodeComparator();
-        PriorityQueue<BoxNode> toBeVisited = new PriorityQueue<>(11, comparator);
+        NodeQueue<BoxNode> toBeVisited = new NodeQueue<>(comparator);
         Set<BoxNode> visited = new HashSet<>();
 
         /* Set initial state. */
-        meta.put(initial, new Pair<>(null, null));
         toBeVisited.add(initial);
 
         int count = 0;
         while(toBeVisited.size() != 0) {
 
-            if (count++ > maxCount) {
+            if (count++ > maxCount || deadline.expired()) {
                 break;
             }
 
@@ -68,19 +78,14 @@ public class BoxNodeAstar {
             visited.add(thisState);
 
             if (thisState.is_goal()) {
-                result.addAll(construct_box_route(thisState, meta));
+                result.addAll(construct_box_route(thisState));
                 return true;
             }
 
             /* Get children for this state. */
-            List<Pair<BoxNode, Action>> stateActions = thisState.get_children();
-
-            for (Pair<BoxNode, Action> p : stateActions) {
-                BoxNode child = p.getKey();
-                Action action = p.getValue();
+            for (BoxNode child : thisState.get_children()) {
                 if (!visited.contains(child) && !toBeVisited.contains(child)) {
                     toBeVisited.add(child);
-                    meta.put(child, new Pair<>(thisState, action));
                 }
             }
         }
@@ -97,17 +102,23 @@ public class BoxNodeAstar {
      * @return - Goal environment if solved, null otherwise.
      */
     public static Environment solve(Environment start, Point2D goal, List<Action> result, int moved, int maxCount) {
-        List<Box> objects = new ArrayList<>();
-        for (int i = 0; i < start.movingObjects.size(); i++) {
-            double width = start.movingObjects.get(i).getWidth();
-            if (i == moved) {
-                objects.add(new MovingBox(new Point2D.Double(goal.getX(), goal.getY()), width));
-            } else {
-                objects.add(start.movingObjects.get(i));
-            }
-        }
-        Environment goalEnvironment = new Environment(objects, start.staticObstacles);
-        if (solve(start, goalEnvironment, result, moved, maxCount)) {
+        return solve(start, goal, result, moved, maxCount, Deadline.NONE);
+    }
+
+    /**
+     * Solve the transition from a given environment to a goal, only one box is moved, until the deadline.
+     * @param start - The start environment.
+     * @param goal - The goal of the moved box.
+     * @param result - The result.
+     * @param moved - The index for the box that can be moved.
+     * @param maxCount - The max computation steps.
+     * @param deadline - The deadline.
+     * @return - Goal environment if solved, null otherwise.
+     */
+    public static Environment solve(Environment start, Point2D goal, List<Action> result, int moved, int maxCount,
+                                    Deadline deadline) {
+        Environment goalEnvironment = new Environment(start, moved, goal);
+        if (solve(start, goalEnvironment, result, moved, maxCount, deadline)) {
             return goalEnvironment;
         } else {
             return null;
@@ -0,0 +1,97 @@
+package boxAstar;
+
+import java.util.*;
+import java.awt.geom.*;
+import problem.*;
+import utility.*;
+
+/**
+ * This class is a corridor around a box plan found in a coarse phase.
+ * It keeps the states of the plan, and the distance the boxes still move in
+ * the plan from each state, which is the coarse path cost left. A state of a
+ * finer phase is in the corridor if all its boxes are within one coarse step
+ * of the same state of the plan, so the boxes are moved in the order of the
+ * plan. The distance left along the plan is the heuristic of the finer phase,
+ * which doesn't have to find the way around obstacles again.
+ */
+public class Corridor {
+
+    /* Box positions of each state of the plan, x and y of each box in turn. */
+    private final double[][] positions;
+
+    /* Distance the boxes still move in the plan from each state. */
+    private final double[] remaining;
+
+    /* How far a box may be from its position in a state of the plan. */
+    private final double radius;
+
+    /**
+     * Constructor.
+     * @param states - The environments along the plan, from start to end.
+     * @param goals - The goals of the boxes, the plan ends with all of them at the goals.
+     * @param radius - How far a box may be from its position in the plan, the coarse step.
+     */
+    public Corridor(List<Environment> states, List<Point2D> goals, double radius) {
+        this.radius = radius;
+        int count = states.size() + 1;
+        int size = states.get(0).movingObjects.size();
+        positions = new double[count][2 * size];
+        remaining = new double[count];
+        for (int k = 0; k < count - 1; k++) {
+            List<Box> objects = states.get(k).movingObjects;
+            for (int i = 0; i < size; i++) {
+                positions[k][2 * i] = objects.get(i).getPos().getX();
+                positions[k][2 * i + 1] = objects.get(i).getPos().getY();
+            }
+        }
+        /* The last state has the boxes exactly at the goals. */
+        positions[count - 1] = positions[count - 2].clone();
+        for (int i = 0; i < goals.size(); i++) {
+            positions[count - 1][2 * i] = goals.get(i).getX();
+            positions[count - 1][2 * i + 1] = goals.get(i).getY();
+        }
+        for (int k = count - 2; k >= 0; k--) {
+            remaining[k] = remaining[k + 1] + distance(positions[k], positions[k + 1]);
+        }
+    }
+
+    /**
+     * Get the distance between the boxes of two states.
+     * @param a - Box positions of state a.
+     * @param b - Box positions of state b.
+     * @return - The sum of the distances of each box.
+     */
+    private static double distance(double[] a, double[] b) {
+        double result = 0;
+        for (int i = 0; i < a.length; i += 2) {
+            result += Math.hypot(a[i] - b[i], a[i + 1] - b[i + 1]);
+        }
+        return result;
+    }
+
+    /**
+     * Get the distance the boxes of the given state still have to move,
+     * to the closest state of the plan and then along the plan.
+     * @param objects - The boxes of the given state.
+     * @return - The distance, infinity if the state is out of the corridor.
+     */
+    public double cost_to_go(List<Box> objects) {
+        int size = objects.size();
+        double result = Double.POSITIVE_INFINITY;
+        for (int k = 0; k < remaining.length; k++) {
+            double[] pos = positions[k];
+            double distance = remaining[k];
+            for (int i = 0; i < size && distance < result; i++) {
+                double dx = objects.get(i).getPos().getX() - pos[2 * i];
+                double dy = objects.get(i).getPos().getY() - pos[2 * i + 1];
+                if (Math.abs(dx) > radius + Utility.MAX_ERROR || Math.abs(dy) > radius + Utility.MAX_ERROR) {
+                    distance = Double.POSITIVE_INFINITY;
+                } else {
+                    distance += Math.sqrt(dx * dx + dy * dy);
+                }
+            }
+            result = Math.min(result, distance);
+        }
+        return result;
+    }
+}
@@ -2,7 +2,6 @@ package boxAstar;
 
 import java.util.*;
 import java.awt.geom.*;
-import javafx.util.Pair;
 import problem.*;
 import utility.*;
 import static utility.Direction.*;
@@ -21,15 +20,42 @@ public class TreeNode implements Utility {
     /* The cost to goal of this state. */
     private double cost;
 
+    /* The canonical key of this state. */
+    private StateKey key;
+
+    /* The cost from start to this state. */
+    private double pathCost;
+
+    /* The corridor of the coarser phase, null if there is none. */
+    private Corridor corridor;
+
+    /* The state this one is reached from, null for the start. */
+    private TreeNode parent;
+
+    /* The action from the parent to this state, null for the start. */
+    private Action action;
+
     /**
      * Constructor.
      * @param state - Start environment.
      * @param goals - The goals position for all moving boxes.
      */
     public TreeNode(Environment state, List<Point2D> goals) {
+        this(state, goals, null);
+    }
+
+    /**
+     * Constructor of a node in a finer phase.
+     * @param state - Start environment.
+     * @param goals - The goals position for all moving boxes.
+     * @param corridor - The corridor of the coarser phase, null if there is none.
+     */
+    public TreeNode(Environment state, List<Point2D> goals, Corridor corridor) {
         this.state = state;
         this.goals = goals;
+        this.corridor = corridor;
         update_cost();
+        key = new StateKey(state.movingObjects);
     }
 
     /**
@@ -40,10 +66,55 @@ public class TreeNode implements Utility {
         return cost;
     }
 
+    /**
+     * Get the cost from start to this state.
+     * @return - The cost from start to this state.
+     */
+    public double path_cost() {
+        return pathCost;
+    }
+
+    /**
+     * Get the state this one is reached from.
+     * @return - The parent state, null for the start.
+     */
+    public TreeNode parent() {
+        return parent;
+    }
+
+    /**
+     * Get the action from the parent to this state.
+     * @return - The action, null for the start.
+     */
+    public Action action() {
+        return action;
+    }
+
+    /**
+     * Set the cost from start to this state.
+     * @param pathCost - The cost from start to this state.
+     */
+    public void set_path_cost(double pathCost) {
+        this.pathCost = pathCost;
+    }
+
+    /**
+     * Get the priority of this state in astar search.
+     * @return - The path cost plus the cost to goal.
+     */
+    public double priority() {
+        return pathCost + cost;
+    }
+
     /**
      * Update the cost of this state, called in constructor.
      */
     private void update_cost() {
+        if (corridor != null) {
+            /* Along the plan of the coarser phase instead of straight. */
+            cost = BOX_WEIGHT * corridor.cost_to_go(state.movingObjects);
+            return;
+        }
         cost = 0;
         List<Box> movingObjects = state.movingObjects;
         int goalSize = goals.size();
@@ -62,15 +133,7 @@ public class TreeNode implements Utility {
      */
     @Override
     public int hashCode() {
-        int result;
-        result = 0;
-        List<Box> movingObjects = state.movingObjects;
-        int size = movingObjects.size();
-        for (int i = 0; i < size; i++) {
-            result += (i + 1) * movingObjects.get(i).pos.getX() * (10000 + 10 * i);
-            result += (i + 1) * movingObjects.get(i).pos.getY() * (10000 + 10 * i);
-        }
-        return result;
+        return key.hashCode();
     }
 
     /**
@@ -82,15 +145,7 @@ public class TreeNode implements Utility {
     public boolean equals(Object o) {
         if (o instanceof TreeNode) {
             TreeNode tn = (TreeNode) o;
-            List<Box> stateMovingObjects = state.movingObjects;
-            List<Box> tnMovingObjects = tn.state.movingObjects;
-            int size = stateMovingObjects.size();
-            for (int i = 0; i < size; i++) {
-                if (is_two_pos_away(stateMovingObjects.get(i).getPos(), tnMovingObjects.get(i).getPos())) {
-                    return false;
-                }
-            }
-            return true;
+            return key.equals(tn.key);
         }
         return false;
     }
@@ -101,7 +156,7 @@ public class TreeNode implements Utility {
      * @param boxWidth - The width of the box.
      * @return - The step size.
      */
-    private double get_step_size(Phase phase, double boxWidth) {
+    static double get_step_size(Phase phase, double boxWidth) {
         double step = boxWidth;
         switch (phase) {
             case PHASE_1:
@@ -140,7 +195,7 @@ public class TreeNode implements Utility {
     public boolean is_goal(Phase phase) {
         List<Box> stateMovingObjects = this.state.movingObjects;
         int size = goals.size();
-        double step = this.get_step_size(phase, stateMovingObjects.get(0).getWidth());
+        double step = get_step_size(phase, stateMovingObjects.get(0).getWidth());
         for (int i = 0; i < size; i++) {
             if (is_two_pos_away(stateMovingObjects.get(i).getPos(), goals.get(i), 0.5 * step)) {
                 return false;
@@ -149,33 +204,17 @@ public class TreeNode implements Utility {
         return true;
     }
 
-    /**
-     * Set the box to have the new position in the given environment.
-     * @param environment - The given environment.
-     * @param index - The index of the box that to be set.
-     * @param newPos - The new position of the box.
-     */
-    private void set_box(Environment environment, int index, Point2D newPos) {
-        List<Box> movingObjects = environment.movingObjects;
-        Box box = movingObjects.get(index);
-        if (box instanceof MovingBox) {
-            movingObjects.set(index, new MovingBox(newPos, movingObjects.get(index).getWidth()));
-        } else {
-            movingObjects.set(index, new MovingObstacle(newPos, movingObjects.get(index).getWidth()));
-        }
-    }
-
     /**
      * Set the box further in the given direction, used in get child action of astar.
      * @param index - The index of the moved box.
      * @param direction - The given direction.
-     * @param result - A result of TreeNode and corresponding action.
+     * @param result - The children, each with its parent and action.
      * @param phase - The phase of the search.
      */
-    private void set_further(int index, Direction direction, List<Pair<TreeNode, Action>> result, Phase phase) {
+    private void set_further(int index, Direction direction, List<TreeNode> result, Phase phase) {
 
-        Environment oldEnvironment = new Environment(state.movingObjects, state.staticObstacles);
-        Environment newEnvironment = new Environment(state.movingObjects, state.staticObstacles);
+        Environment oldEnvironment = state;
+        Point2D newPos = null;
 
         double startX = state.movingObjects.get(index).getPos().getX();
         double startY = state.movingObjects.get(index).getPos().getY();
@@ -192,42 +231,51 @@ public class TreeNode implements Utility {
             case UP:
                 robotBefore = new RobotConfig(new Point2D.Double(startX + 0.5 * width, startY), 0);
                 robotBackUp = new RobotConfig(new Point2D.Double(startX + 0.5 * width, startY - SPACE_LEFT * UNIT_STEP), 0);
-                set_box(newEnvironment, index, new Point2D.Double(startX, startY + step));
+                newPos = new Point2D.Double(startX, startY + step);
                 robotAfter = new RobotConfig(new Point2D.Double(startX + 0.5 * width, startY + step), 0);
                 break;
             case DOWN:
                 robotBefore = new RobotConfig(new Point2D.Double(startX + 0.5 * width, startY + width), 0);
                 robotBackUp = new RobotConfig(new Point2D.Double(startX + 0.5 * width, startY + width +  SPACE_LEFT * UNIT_STEP), 0);
-                set_box(newEnvironment, index, new Point2D.Double(startX, startY - step));
+                newPos = new Point2D.Double(startX, startY - step);
                 robotAfter = new RobotConfig(new Point2D.Double(startX + 0.5 * width, startY + width - step), 0);
                 break;
             case LEFT:
                 robotBefore = new RobotConfig(new Point2D.Double(startX + width, startY + 0.5 * width), 1.571);
                 robotBackUp = new RobotConfig(new Point2D.Double(startX + width + SPACE_LEFT * UNIT_STEP, startY + 0.5 * width), 1.571);
-                set_box(newEnvironment, index, new Point2D.Double(startX - step, startY));
+                newPos = new Point2D.Double(startX - step, startY);
                 robotAfter = new RobotConfig(new Point2D.Double(startX + width - step, startY + 0.5 * width), 1.571);
                 break;
             case RIGHT:
                 robotBefore = new RobotConfig(new Point2D.Double(startX, startY + 0.5 * width), 1.571);
-                robotBackUp = new RobotConfig(new Point2D.Double(startX + width - SPACE_LEFT * UNIT_STEP, startY + 0.5 * width), 1.571);
-                set_box(newEnvironment, index, new Point2D.Double(startX + step, startY));
+                robotBackUp = new RobotConfig(new Point2D.Double(startX - SPACE_LEFT * UNIT_STEP, startY + 0.5 * width), 1.571);
+                newPos = new Point2D.Double(startX + step, startY);
                 robotAfter = new RobotConfig(new Point2D.Double(startX + step, startY + 0.5 * width), 1.571);
                 break;
         }
 
-        if (noCollisionForAll(oldEnvironment, newEnvironment, robotBefore, width) && noCollisionForAll(oldEnvironment, newEnvironment, robotBackUp, width)) {
-            TreeNode newTn = new TreeNode(newEnvironment, goals);
-            Action action = new Action(oldEnvironment, index, direction, robotBefore, robotAfter);
-            result.add(new Pair<>(newTn, action));
+        /* Only the moved box and the robot are checked against the parent state. */
+        PrimitiveEnvironment primitive = oldEnvironment.get_primitive();
+        if (primitive.no_collision_for_move(index, newPos.getX(), newPos.getY(), robotBefore, width) &&
+                primitive.no_collision_for_move(index, newPos.getX(), newPos.getY(), robotBackUp, width)) {
+            Environment newEnvironment = new Environment(state, index, newPos);
+            TreeNode newTn = new TreeNode(newEnvironment, goals, corridor);
+            if (Double.isInfinite(newTn.cost())) {
+                /* A finer phase stays in the corridor of the coarser one. */
+                return;
+            }
+            newTn.parent = this;
+            newTn.action = new Action(oldEnvironment, index, direction, robotBefore, robotAfter);
+            result.add(newTn);
         }
     }
 
     /**
      * Get the children of this state.
-     * @return - A list of TreeNode and corresponding action.
+     * @return - A list of TreeNode, each with its parent and action.
      */
-    public List<Pair<TreeNode, Action>> get_children(Phase phase) {
-        List<Pair<TreeNode, Action>> result = new ArrayList<>();
+    public List<TreeNode> get_children(Phase phase) {
+        List<TreeNode> result = new ArrayList<>();
         int size = state.movingObjects.size();
 
         /* For each of the box, get child. */
@@ -2,7 +2,6 @@ package boxAstar;
 
 import java.util.*;
 import java.awt.geom.*;
-import javafx.util.Pair;
 import utility.*;
 
 /**
@@ -11,28 +10,31 @@ import utility.*;
  * It takes the start environment and the goal positions, and
  * return a list of Actions that needs to be solved by robot.
  */
-public class TreeNodeAstar {
+public class TreeNodeAstar implements Utility {
 
     /**
      * Construct the box route for the problem.
      * @param thisState - The goal state.
-     * @param meta - The route information.
-     * @return - A list of Actions that needs to be solved by robot.
+     * @param result - A list of Actions that needs to be solved by robot, the actions are appended to it.
+     * @param states - The environments along the route, from start to the goal state, appended to it.
      */
-    private static List<Action> construct_box_route(TreeNode thisState, Map<TreeNode, Pair<TreeNode, Action>> meta) {
-        List<Action> result = new ArrayList<>();
+    private static void construct_box_route(TreeNode thisState, List<Action> result, List<Environment> states) {
         Stack<Action> actions = new Stack<>();
+        Stack<Environment> environments = new Stack<>();
         TreeNode state = thisState;
-        while (meta.get(state).getKey() != null) {
-            Pair<TreeNode, Action> parent_action = meta.get(state);
-            actions.push(parent_action.getValue());
-            state = parent_action.getKey();
+        environments.push(state.state);
+        while (state.parent() != null) {
+            actions.push(state.action());
+            state = state.parent();
+            environments.push(state.state);
         }
         int size = actions.size();
         for (int i = 0; i < size; i++) {
             result.add(actions.pop());
         }
-        return result;
+        while (!environments.isEmpty()) {
+            states.add(environments.pop());
+        }
     }
 
     /**
@@ -45,53 +47,128 @@ public class TreeNodeAstar {
      * @return - The closest environment to the goal.
      */
     public static Environment solve(Environment environment, List<Point2D> goals, Phase phase, List<Action> result, double time) {
+        return solve(environment, goals, phase, result, Deadline.after((long) time));
+    }
 
-        TreeNode initial = new TreeNode(environment, goals);
+    /**
+     * Solve the environment until the deadline.
+     * @param environment - The start environment.
+     * @param goals - The position of the goals.
+     * @param phase - The phase of the search.
+     * @param result - The result.
+     * @param deadline - The deadline.
+     * @return - The closest environment to the goal.
+     */
+    public static Environment solve(Environment environment, List<Point2D> goals, Phase phase, List<Action> result, Deadline deadline) {
+        List<Environment> states = new ArrayList<>();
+        search(new TreeNode(environment, goals), phase, result, states, deadline);
+        return states.get(states.size() - 1);
+    }
+
+    /**
+     * Solve the environment coarse to fine, from PHASE_1 to the last phase.
+     * Each phase after the first searches only in the corridor of the plan of
+     * the phase before, guided by the distance left along that plan. When a
+     * phase can't reach its goal in time, the plan of the phase before is kept.
+     * @param environment - The start environment.
+     * @param goals - The position of the goals.
+     * @param last - The last phase.
+     * @param result - The result.
+     * @param phaseTime - The max time of each phase.
+     * @param deadline - The deadline.
+     * @return - The closest environment to the goal.
+     */
+    public static Environment solve_phases(Environment environment, List<Point2D> goals, Phase last, List<Action> result,
+                                           long phaseTime, Deadline deadline) {
+        List<Action> plan = new ArrayList<>();
+        List<Environment> planStates = new ArrayList<>();
+        Corridor corridor = null;
+        double width = environment.movingObjects.get(0).getWidth();
+        for (Phase phase : Phase.values()) {
+            if (phase.compareTo(last) > 0 || (corridor != null && deadline.expired())) {
+                break;
+            }
+            System.out.printf("Solve %s..\n", phase);
+            List<Action> actions = new ArrayList<>();
+            List<Environment> states = new ArrayList<>();
+            boolean reached = search(new TreeNode(environment, goals, corridor), phase, actions, states, deadline.within(phaseTime));
+            if (!reached && corridor != null) {
+                System.out.println("Phase not refined in time, keep the plan of the phase before.");
+                break;
+            }
+            plan = actions;
+            planStates = states;
+            if (!reached) {
+                break;
+            }
+            corridor = new Corridor(states, goals, TreeNode.get_step_size(phase, width));
+        }
+        result.addAll(plan);
+        return planStates.get(planStates.size() - 1);
+    }
+
+    /**
+     * Search a plan for the phase.
+     * @param initial - The start state.
+     * @param phase - The phase of the search.
+     * @param result - The result, the plan to the goal or to the closest state.
+     * @param states - The environments along the plan, from start to end.
+     * @param deadline - The deadline.
+     * @return - True if the goal of the phase is reached, false otherwise.
+     */
+    private static boolean search(TreeNode initial, Phase phase, List<Action> result, List<Environment> states, Deadline deadline) {
 
-        Map<TreeNode, Pair<TreeNode, Action>> meta = new HashMap<>();
         Comparator<TreeNode> comparator = new TreeNodeComparator();
-        PriorityQueue<TreeNode> toBeVisited = new PriorityQueue<>(11, comparator);
-        PriorityQueue<TreeNode> visited = new PriorityQueue<>(11, comparator);
+        NodeQueue<TreeNode> toBeVisited = new NodeQueue<>(comparator);
+        Set<TreeNode> visited = new HashSet<>();
 
         /* Set initial state. */
-        meta.put(initial, new Pair<>(null, null));
         toBeVisited.add(initial);
 
+        /* The visited state closest to the goal, used when time runs out. */
+        TreeNode closest = initial;
+
         /*  Used for detect trap. */
         int count = 0;
-        double start_time = System.currentTimeMillis();
         while(toBeVisited.size() != 0) {
 
             TreeNode thisState = toBeVisited.remove();
             visited.add(thisState);
+            if (thisState.cost() < closest.cost()) {
+                closest = thisState;
+            }
 
             count++;
 
-            if (System.currentTimeMillis() - start_time > time) {
+            if (deadline.expired()) {
                 break;
             }
 
             if (thisState.is_goal(phase)) {
                 System.out.printf("Stage solved with %d steps.\n", count);
-                result.addAll(construct_box_route(thisState, meta));
-                return thisState.state;
+                construct_box_route(thisState, result, states);
+                return true;
             }
 
             /* Get children for this state. */
-            List<Pair<TreeNode, Action>> stateActions = thisState.get_children(phase);
-
-            for (Pair<TreeNode, Action> p : stateActions) {
-                TreeNode child = p.getKey();
-                Action action = p.getValue();
-                if (!visited.contains(child) && !toBeVisited.contains(child)) {
+            for (TreeNode child : thisState.get_children(phase)) {
+                Action action = child.action();
+                if (visited.contains(child)) {
+                    continue;
+                }
+                child.set_path_cost(thisState.path_cost() +
+                        PATH_WEIGHT * action.pushPosition.getPos().distance(action.afterPushPosition.getPos()));
+                TreeNode open = toBeVisited.get(child);
+                if (open == null) {
                     toBeVisited.add(child);
-                    meta.put(child, new Pair<>(thisState, action));
+                } else if (child.path_cost() < open.path_cost()) {
+                    /* Found a shorter route to a state in the open set, the child replaces it with its parent. */
+                    toBeVisited.decrease_key(child);
                 }
             }
         }
         System.out.printf("Stage solved to most close solution with %d steps.\n", count);
-        TreeNode closest = visited.remove();
-        result.addAll(construct_box_route(closest, meta));
-        return closest.state;
+        construct_box_route(closest, result, states);
+        return false;
     }
 }
\ No newline at end of file
@@ -14,9 +14,9 @@ public class TreeNodeComparator implements Comparator<TreeNode> {
      * @return - 1 if bn1 > bn2, 0 if equals, -1 if bn1 < bn2.
      */
     public int compare(TreeNode bn1, TreeNode bn2) {
-        if (bn1.cost() < bn2.cost()) {
+        if (bn1.priority() < bn2.priority()) {
             return -1;
-        } else if (bn1.cost() > bn2.cost()) {
+        } else if (bn1.priority() > bn2.priority()) {
             return 1;
         } else {
             return 0;
@@ -12,6 +12,9 @@ public class BoxSample implements Utility {
     /* The state of this sample. */
     public List<Box> movingObjects;
 
+    /* The canonical key of this sample, built on first use. */
+    private StateKey key;
+
     /* The parent of this sample. */
     public BoxSample parent;
 
@@ -25,22 +28,40 @@ public class BoxSample implements Utility {
     }
 
     /**
-     * Get the hash code of this sample.
-     * @return - The hash code of this sample.
+     * Get the coordinates of this sample for nearest neighbour search.
+     * @return - X and y of each box.
      */
-    @Override
-    public int hashCode() {
-        int result;
-        result = 0;
+    public double[] point() {
+        double[] result = new double[2 * movingObjects.size()];
         int i = 0;
         for (Box b : movingObjects) {
-            result += (i + 1) * b.getPos().getX() * (10000 + 10 * i);
-            result += (i + 1) * b.getPos().getY() * (10000 + 10 * i);
-            i++;
+            result[i++] = b.getPos().getX();
+            result[i++] = b.getPos().getY();
         }
         return result;
     }
 
+    /**
+     * Get the canonical key of this sample, samples are on the unit step grid.
+     * The state must not change once the key is built.
+     * @return - The key.
+     */
+    public StateKey key() {
+        if (key == null) {
+            key = new StateKey(movingObjects);
+        }
+        return key;
+    }
+
+    /**
+     * Get the hash code of this sample.
+     * @return - The hash code of this sample.
+     */
+    @Override
+    public int hashCode() {
+        return key().hashCode();
+    }
+
     /**
      * Check if this state equals to given object.
      * @param o - The given object.
@@ -50,14 +71,7 @@ public class BoxSample implements Utility {
     public boolean equals(Object o) {
         if (o instanceof BoxSample) {
             BoxSample bs = (BoxSample) o;
-            List<Box> bsMovingObjects = bs.movingObjects;
-            int size = movingObjects.size();
-            for (int i = 0; i < size; i++) {
-                if (is_two_pos_away(movingObjects.get(i).getPos(), bsMovingObjects.get(i).getPos())) {
-                    return false;
-                }
-            }
-            return true;
+            return key().equals(bs.key());
         }
         return false;
     }
@@ -1,6 +1,8 @@
 package boxRRT;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.awt.geom.*;
 import javafx.util.Pair;
 import problem.*;
@@ -18,7 +20,16 @@ public class BoxSampleRRT implements Utility {
     private double boxSampleStepSquare;
 
     /* Random number generator. */
-    private Random random;
+    private SplittableRandom random;
+
+    /* Set when another tree grown in parallel has solved the problem. */
+    private AtomicBoolean stopped;
+
+    /* Sampler of x and y of each moved box. */
+    private Sampler sampler;
+
+    /* The solves give up when it expires. */
+    private Deadline deadline;
 
     /* Start config. */
     private BoxSample start;
@@ -52,7 +63,10 @@ public class BoxSampleRRT implements Utility {
         this.startEnvironment = startEnvironment;
         this.moved = moved;
         this.goal = goals.get(moved.get(0));
-        random = new Random();
+        random = new SplittableRandom();
+        stopped = new AtomicBoolean();
+        deadline = Deadline.NONE;
+        sampler = new Sampler(SampleStrategy.UNIFORM, 2 * moved.size(), random);
         boxSampleStep = step;
         boxSampleStepSquare = step * step;
         boxCollisionCount = new HashMap<>();
@@ -65,33 +79,76 @@ public class BoxSampleRRT implements Utility {
         }
     }
 
+    /**
+     * Constructor of a tree grown in parallel, solving the same problem as the given planner.
+     * @param other - The given planner.
+     * @param random - Random number generator of this tree.
+     * @param stopped - Set when any tree has solved the problem.
+     */
+    private BoxSampleRRT(BoxSampleRRT other, SplittableRandom random, AtomicBoolean stopped) {
+        start = new BoxSample(other.start.movingObjects);
+        startEnvironment = other.startEnvironment;
+        moved = other.moved;
+        goal = other.goal;
+        boxSampleStep = other.boxSampleStep;
+        boxSampleStepSquare = other.boxSampleStepSquare;
+        boxCollisionCount = new HashMap<>();
+        for (Box b : other.boxCollisionCount.keySet()) {
+            boxCollisionCount.put(b, 0);
+        }
+        this.random = random;
+        this.stopped = stopped;
+        sampler = other.sampler.split(random);
+        deadline = other.deadline;
+    }
+
+    /**
+     * Set the deadline of the following solves, they return null when it expires.
+     * @param deadline - The deadline.
+     */
+    public void set_deadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Set the sample strategy used by the following solves.
+     * @param strategy - The sample strategy.
+     */
+    public void set_sample_strategy(SampleStrategy strategy) {
+        sampler = new Sampler(strategy, 2 * moved.size(), random);
+    }
+
     /**
      * Get a ramdom sample from c-space.
+     * The goal of goal bias is the first moved box at its goal, the others where they start.
      * @return A box sample.
      */
     private BoxSample get_random_sample() {
-        List<Box> objects;
-        List<Box> movedObjects;
-        int size = startEnvironment.movingObjects.size();
-        objects = new ArrayList<>();
-        movedObjects = new ArrayList<>();
+        double[] target = start.point();
+        target[0] = goal.getX();
+        target[1] = goal.getY();
+        double[] point = sampler.next(target,
+                p -> is_sample_free(sample_of(p)));
+        return sample_of(point);
+    }
+
+    /**
+     * Get the sample of a point in the unit cube, rounded as the samples.
+     * @param point - The point, x and y of each moved box.
+     * @return - The box sample.
+     */
+    private BoxSample sample_of(double[] point) {
+        List<Box> movedObjects = new ArrayList<>();
+        int size = start.movingObjects.size();
         for (int i = 0; i < size; i++) {
-            if (moved.contains(i)) {
-                Box box = startEnvironment.movingObjects.get(i);
-                double boxWidth = box.getWidth();
-                double x = (double) Math.round(random.nextDouble() * 1000d) / 1000d;
-                double y = (double) Math.round(random.nextDouble() * 1000d) / 1000d;
-                if (box instanceof MovingBox) {
-                    MovingBox mb = new MovingBox(new Point2D.Double(x, y), boxWidth);
-                    movedObjects.add(mb);
-                    objects.add(mb);
-                } else {
-                    MovingObstacle mo = new MovingObstacle(new Point2D.Double(x, y), boxWidth);
-                    movedObjects.add(mo);
-                    objects.add(mo);
-                }
+            Box box = start.movingObjects.get(i);
+            double boxWidth = box.getWidth();
+            double x = (double) Math.round(point[2 * i] * 1000d) / 1000d;
+            double y = (double) Math.round(point[2 * i + 1] * 1000d) / 1000d;
+            if (box instanceof MovingBox) {
+                movedObjects.add(new MovingBox(new Point2D.Double(x, y), boxWidth));
             } else {
-                objects.add(startEnvironment.movingObjects.get(i));
+                movedObjects.add(new MovingObstacle(new Point2D.Double(x, y), boxWidth));
             }
         }
         return new BoxSample(movedObjects);
@@ -135,27 +192,12 @@ public class BoxSampleRRT implements Utility {
 
     /**
      * Get the closest sample to the child in this graph.
-     * @param graph - The graph.
+     * @param tree - The nearest neighbour index of the graph.
      * @param child - The child sample.
      * @return - The closest sample.
      */
-    private BoxSample get_closest(List<BoxSample> graph, BoxSample child) {
-        double distance = 0;
-        double temp;
-        BoxSample result = null;
-        for (BoxSample sn : graph) {
-            if (result == null) {
-                distance = distance2_between(child, sn);
-                result = sn;
-            } else {
-                temp = distance2_between(child, sn);
-                if (temp < distance) {
-                    distance = temp;
-                    result = sn;
-                }
-            }
-        }
-        return result;
+    private BoxSample get_closest(KdTree<BoxSample> tree, BoxSample child) {
+        return tree.nearest(child.point());
     }
 
     /**
@@ -251,6 +293,68 @@ public class BoxSampleRRT implements Utility {
         return true;
     }
 
+    /**
+     * Get all moving objects of the start environment, with the moved boxes at the sample.
+     * @param sample - The sample.
+     * @return - All moving objects.
+     */
+    private List<Box> objects_of(BoxSample sample) {
+        List<Box> objects = new ArrayList<>();
+        int size = startEnvironment.movingObjects.size();
+        for (int i = 0; i < size; i++) {
+            if (moved.contains(i)) {
+                objects.add(sample.movingObjects.get(moved.indexOf(i)));
+            } else {
+                objects.add(startEnvironment.movingObjects.get(i));
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * Check the boxes of a sample for collision, on the primitive start environment
+     * with the moved boxes placed at the sample.
+     * @param sample - The sample.
+     * @return - True if no collision, false otherwise.
+     */
+    private boolean is_sample_free(BoxSample sample) {
+        PrimitiveEnvironment primitive = startEnvironment.get_primitive();
+        for (int k = 0; k < moved.size(); k++) {
+            Point2D pos = sample.movingObjects.get(k).getPos();
+            primitive = new PrimitiveEnvironment(primitive, moved.get(k), pos.getX(), pos.getY());
+        }
+        return primitive.no_collision_for_boxes();
+    }
+
+    /**
+     * Step from Sample-from towards Sample-to by one sample step, without collision checking.
+     * @param from - Sample-from.
+     * @param to - Sample-to.
+     * @return - The sample one step away.
+     */
+    private BoxSample step_towards(BoxSample from, BoxSample to) {
+        double distance = Math.sqrt(distance2_between(from, to));
+        List<Box> movedObjects = new ArrayList<>();
+        int size = from.movingObjects.size();
+        for (int i = 0; i < size; i++) {
+            Box boxFrom = from.movingObjects.get(i);
+            Box boxTo = to.movingObjects.get(i);
+            double boxWidth = boxFrom.getWidth();
+            double x1 = boxFrom.getPos().getX();
+            double y1 = boxFrom.getPos().getY();
+            double x2 = boxTo.getPos().getX();
+            double y2 = boxTo.getPos().getY();
+            double x3 = Math.round((x1 - (x1 - x2) * boxSampleStep / distance) * 1000d) / 1000d;
+            double y3 = Math.round((y1 - (y1 - y2) * boxSampleStep / distance) * 1000d) / 1000d;
+            if (boxFrom instanceof MovingBox) {
+                movedObjects.add(new MovingBox(new Point2D.Double(x3, y3), boxWidth));
+            } else {
+                movedObjects.add(new MovingObstacle(new Point2D.Double(x3, y3), boxWidth));
+            }
+        }
+        return new BoxSample(movedObjects);
+    }
+
     /**
      * Check if a given sample is goal.
      * @param sn - The given sample.
@@ -265,23 +369,68 @@ public class BoxSampleRRT implements Utility {
         return true;
     }
 
+    /**
+     * Check if the moved boxes can move straight from one sample to another,
+     * at the same resolution as can_connect. The boxes move one after
+     * another, in the order box node solves them.
+     * @param from - Sample-from.
+     * @param to - Sample-to.
+     * @return - true if can move, false otherwise.
+     */
+    private boolean can_shortcut(BoxSample from, BoxSample to) {
+        List<Box> current = new ArrayList<>(from.movingObjects);
+        int size = current.size();
+        for (int k = 0; k < size; k++) {
+            Box boxFrom = from.movingObjects.get(k);
+            Box boxTo = to.movingObjects.get(k);
+            double boxWidth = boxFrom.getWidth();
+            double x1 = boxFrom.getPos().getX();
+            double y1 = boxFrom.getPos().getY();
+            double x2 = boxTo.getPos().getX();
+            double y2 = boxTo.getPos().getY();
+            int count = (int) Math.ceil(Math.hypot(x2 - x1, y2 - y1) / (boxSampleStep / 10));
+            for (int j = 1; j < count; j++) {
+                double t = (double) j / count;
+                double x3 = Math.round((x1 + t * (x2 - x1)) * 1000d) / 1000d;
+                double y3 = Math.round((y1 + t * (y2 - y1)) * 1000d) / 1000d;
+                if (boxFrom instanceof MovingBox) {
+                    current.set(k, new MovingBox(new Point2D.Double(x3, y3), boxWidth));
+                } else {
+                    current.set(k, new MovingObstacle(new Point2D.Double(x3, y3), boxWidth));
+                }
+                if (!is_sample_free(new BoxSample(current))) {
+                    return false;
+                }
+            }
+            current.set(k, boxTo);
+        }
+        return true;
+    }
+
     /**
      * Construct list of environments that needs to be solved by box node.
+     * The path is shortcut first, so box node solves fewer and shorter segments.
      * @param bs - The goal sample.
      * @return - A list of environments that needs to be solved by box node.
      */
     private List<Environment> construct_box_route(BoxSample bs) {
-        Stack<List<Box>> actions = new Stack<>();
-        List<List<Box>> result = new ArrayList<>();
+        Stack<BoxSample> actions = new Stack<>();
+        List<BoxSample> path = new ArrayList<>();
         BoxSample rs = bs;
-        while (rs.parent != null) {
-            actions.push(rs.movingObjects);
+        while (rs != null) {
+            actions.push(rs);
             rs = rs.parent;
         }
-        int actionSize = actions.size();
-        for (int i = 0; i < actionSize; i++) {
-            result.add(actions.pop());
+        while (!actions.isEmpty()) {
+            path.add(actions.pop());
+        }
+        List<List<Box>> result = new ArrayList<>();
+        for (BoxSample sample : shortcut_path(path, this::can_shortcut)) {
+            result.add(sample.movingObjects);
         }
+        /* The start itself is not a move. */
+        result.remove(0);
+        int actionSize = result.size();
         /* Make result to a list of environment. */
         List<Environment> totalRoute = new ArrayList<>();
         int boxSize = startEnvironment.movingObjects.size();
@@ -319,7 +468,14 @@ public class BoxSampleRRT implements Utility {
     public List<Environment> solve (int maxGraphSize) {
         BoxSample goal = new BoxSample(null);
         List<BoxSample> graph = new ArrayList<>();
+        /* Weights of x and y of each moved box, the same as distance2_between. */
+        double[] weights = new double[2 * moved.size()];
+        Arrays.fill(weights, 1);
+        KdTree<BoxSample> tree = new KdTree<>(weights);
+        Set<BoxSample> samples = new HashSet<>();
         graph.add(start);
+        tree.add(start.point(), start);
+        samples.add(start);
         boolean notReachGoal = true;
         if (is_goal(start)) {
             goal.parent = start;
@@ -328,14 +484,18 @@ public class BoxSampleRRT implements Utility {
         int count = 0;
         while (notReachGoal) {
 
+            if (stopped.get() || deadline.expired()) {
+                return null;
+            }
+
             if (count++ > maxGraphSize) {
                 System.out.println("RRT exceed max computation time, exit.");
                 return null;
             }
 
             BoxSample thisSample = get_random_sample();
-            if (!graph.contains(thisSample)) {
-                BoxSample closest = get_closest(graph, thisSample);
+            if (!samples.contains(thisSample)) {
+                BoxSample closest = get_closest(tree, thisSample);
                 if (distance2_between(closest, thisSample) > boxSampleStepSquare) {
                     BoxSample temp = extend(closest, thisSample);
                     if (temp == null) continue;
@@ -344,6 +504,8 @@ public class BoxSampleRRT implements Utility {
                 if (can_connect(closest, thisSample)) {
                     thisSample.parent = closest;
                     graph.add(thisSample);
+                    tree.add(thisSample.point(), thisSample);
+                    samples.add(thisSample);
                     if (is_goal(thisSample)) {
                         goal.parent = thisSample;
                         notReachGoal = false;
@@ -354,4 +516,139 @@ public class BoxSampleRRT implements Utility {
         System.out.printf("RRT solved with %d samples.\n", graph.size());
         return construct_box_route(goal.parent);
     }
+
+    /**
+     * Solve the RRT problem lazily. Each new sample is checked on its own,
+     * but the edge to its parent is added without checking. When a sample
+     * reaches the goal, the unchecked edges on its path are checked from the
+     * start. The first invalid edge is removed with all samples below it,
+     * and the search goes on.
+     * @param maxGraphSize - The max graph size RRT can explore.
+     * @return - A list of environments that needs to be solved by box node.
+     */
+    public List<Environment> solve_lazy(int maxGraphSize) {
+        List<BoxSample> graph = new ArrayList<>();
+        double[] weights = new double[2 * moved.size()];
+        Arrays.fill(weights, 1);
+        KdTree<BoxSample> tree = new KdTree<>(weights);
+        Set<BoxSample> samples = new HashSet<>();
+        /* Samples by identity, the key of a removed sample may be sampled again. */
+        Map<BoxSample, List<BoxSample>> children = new IdentityHashMap<>();
+        Set<BoxSample> checked = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<BoxSample> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        graph.add(start);
+        tree.add(start.point(), start);
+        samples.add(start);
+        checked.add(start);
+        if (is_goal(start)) {
+            return construct_box_route(start);
+        }
+        int count = 0;
+        while (true) {
+            if (stopped.get() || deadline.expired()) {
+                return null;
+            }
+
+            if (count++ > maxGraphSize) {
+                System.out.println("RRT exceed max computation time, exit.");
+                return null;
+            }
+
+            BoxSample thisSample = get_random_sample();
+            if (samples.contains(thisSample)) {
+                continue;
+            }
+            BoxSample closest = tree.nearest(thisSample.point(), sample -> !removed.contains(sample));
+            if (distance2_between(closest, thisSample) > boxSampleStepSquare) {
+                thisSample = step_towards(closest, thisSample);
+            }
+            if (samples.contains(thisSample) ||
+                    !noCollisionForBoxStrictWithFeedback(objects_of(thisSample), startEnvironment.staticObstacles, boxCollisionCount)) {
+                continue;
+            }
+            thisSample.parent = closest;
+            graph.add(thisSample);
+            tree.add(thisSample.point(), thisSample);
+            samples.add(thisSample);
+            children.computeIfAbsent(closest, k -> new ArrayList<>()).add(thisSample);
+
+            if (is_goal(thisSample)) {
+                Stack<BoxSample> path = new Stack<>();
+                for (BoxSample bs = thisSample; !checked.contains(bs); bs = bs.parent) {
+                    path.push(bs);
+                }
+                BoxSample invalid = null;
+                while (!path.isEmpty()) {
+                    BoxSample bs = path.pop();
+                    if (!can_connect(bs.parent, bs)) {
+                        invalid = bs;
+                        break;
+                    }
+                    checked.add(bs);
+                }
+                if (invalid == null) {
+                    System.out.printf("RRT solved with %d samples.\n", graph.size() - removed.size());
+                    return construct_box_route(thisSample);
+                }
+                children.get(invalid.parent).remove(invalid);
+                Stack<BoxSample> toRemove = new Stack<>();
+                toRemove.push(invalid);
+                while (!toRemove.isEmpty()) {
+                    BoxSample bs = toRemove.pop();
+                    removed.add(bs);
+                    samples.remove(bs);
+                    List<BoxSample> below = children.remove(bs);
+                    if (below != null) {
+                        toRemove.addAll(below);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Solve the RRT problem by growing several trees in parallel on TreePool,
+     * each with its own random numbers and collision feedback. The trees queue
+     * there with the trees of the robot planners of the legs.
+     * Every other tree is grown lazily, so the fast lazy search and the
+     * more thorough eager search both get a share of the cores.
+     * The first solution found is returned and the other trees are stopped.
+     * The feedback of all trees is added to this planner for get_problemBox.
+     * @param maxGraphSize - The max graph size each tree can explore.
+     * @param trees - The number of trees.
+     * @return - A list of environments that needs to be solved by box node.
+     */
+    public List<Environment> solve_parallel(int maxGraphSize, int trees) {
+        AtomicBoolean solved = new AtomicBoolean();
+        CompletionService<List<Environment>> service = new ExecutorCompletionService<>(TreePool.POOL);
+        List<BoxSampleRRT> planners = new ArrayList<>();
+        for (int i = 0; i < trees; i++) {
+            BoxSampleRRT tree = new BoxSampleRRT(this, random.split(), solved);
+            planners.add(tree);
+            if (i % 2 == 0) {
+                service.submit(() -> tree.solve(maxGraphSize));
+            } else {
+                service.submit(() -> tree.solve_lazy(maxGraphSize));
+            }
+        }
+        List<Environment> result = null;
+        try {
+            for (int i = 0; i < trees; i++) {
+                List<Environment> route = service.take().get();
+                if (result == null && route != null) {
+                    result = route;
+                    solved.set(true);
+                }
+            }
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            solved.set(true);
+        }
+        for (BoxSampleRRT tree : planners) {
+            for (Map.Entry<Box, Integer> entry : tree.boxCollisionCount.entrySet()) {
+                boxCollisionCount.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+        }
+        return result;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,229 @@
+package robotAstar;
+
+import java.util.*;
+import problem.*;
+import utility.*;
+
+/**
+ * This class gives the cost to go of the robot centre over a coarse lattice.
+ * A cell is blocked if it is fully covered by a box or static obstacle, so
+ * the robot centre can never be in it, and a backward breadth first search
+ * from the goal cell gives a lower bound of the axis aligned distance to the
+ * goal around the boxes and obstacles.
+ * The occupancy is kept between calls, one per thread, so searches on
+ * different environments run side by side. When the environment of a thread
+ * changes only in some boxes, only the cells around those boxes are updated,
+ * and a field already searched is dropped only if a freed cell is next to a
+ * cell it reached.
+ */
+public class DistanceField implements Utility {
+
+    /* Number of cells along each side. */
+    private static final int CELLS = 100;
+
+    /* Size of a cell. */
+    private static final double CELL = 1.0 / CELLS;
+
+    /* Max number of fields kept. */
+    private static final int MAX_FIELDS = 64;
+
+    /* The occupancy last used by each thread, reused while only boxes move. */
+    private static final ThreadLocal<DistanceField> last = new ThreadLocal<>();
+
+    /* The static obstacles of the occupancy. */
+    private final List<StaticObstacle> staticObstacles;
+
+    /* Number of boxes and obstacles fully covering each cell. */
+    private final int[] cover;
+
+    /* The environment of the occupancy. */
+    private PrimitiveEnvironment primitive;
+
+    /* Position and width of each box in the occupancy. */
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] widths;
+
+    /* The fields searched so far, by goal cell. */
+    private final Map<Integer, int[]> fields;
+
+    /**
+     * Constructor.
+     * @param environment - The environment.
+     */
+    private DistanceField(Environment environment) {
+        staticObstacles = environment.staticObstacles;
+        primitive = environment.get_primitive();
+        cover = new int[CELLS * CELLS];
+        xs = primitive.xs.clone();
+        ys = primitive.ys.clone();
+        widths = primitive.widths.clone();
+        fields = new HashMap<>();
+        for (StaticObstacle o : staticObstacles) {
+            cover(o.getRect().getX(), o.getRect().getY(), o.getRect().getWidth(), o.getRect().getHeight(), 1);
+        }
+        for (int i = 0; i < xs.length; i++) {
+            cover(xs[i], ys[i], widths[i], widths[i], 1);
+        }
+    }
+
+    /**
+     * Get the field towards the given goal in the given environment.
+     * The values are in cells, -1 for cells not reached.
+     * @param environment - The environment.
+     * @param goal - The goal robot config.
+     * @return - The field.
+     */
+    public static int[] field_to(Environment environment, RobotConfig goal) {
+        PrimitiveEnvironment primitive = environment.get_primitive();
+        DistanceField occupancy = last.get();
+        if (occupancy == null || occupancy.staticObstacles != environment.staticObstacles ||
+                occupancy.xs.length != primitive.size) {
+            occupancy = new DistanceField(environment);
+            last.set(occupancy);
+        } else if (occupancy.primitive != primitive) {
+            occupancy.update(primitive);
+        }
+        int goalCell = cell_of(goal.getPos().getY()) * CELLS + cell_of(goal.getPos().getX());
+        int[] field = occupancy.fields.get(goalCell);
+        if (field == null) {
+            if (occupancy.fields.size() >= MAX_FIELDS) {
+                occupancy.fields.clear();
+            }
+            field = occupancy.search(goalCell);
+            occupancy.fields.put(goalCell, field);
+        }
+        return field;
+    }
+
+    /**
+     * Get the lower bound of the axis aligned distance from a point to the goal of a field.
+     * @param field - The field.
+     * @param x - X of the point.
+     * @param y - Y of the point.
+     * @return - The lower bound, 0 if the point is not reached by the field.
+     */
+    public static double distance(int[] field, double x, double y) {
+        int steps = field[cell_of(y) * CELLS + cell_of(x)];
+        /* The first and the last cell may be crossed only in part. */
+        return steps > 1 ? (steps - 1) * CELL : 0;
+    }
+
+    /**
+     * Get the cell of a coordinate.
+     * @param v - The coordinate.
+     * @return - The cell, clamped to the lattice.
+     */
+    private static int cell_of(double v) {
+        return Math.max(0, Math.min(CELLS - 1, (int) Math.floor(v * CELLS)));
+    }
+
+    /**
+     * Add or remove a rectangle, shrunk by the max error, from the cells it fully covers.
+     * @param x - X of the rectangle.
+     * @param y - Y of the rectangle.
+     * @param w - Width of the rectangle.
+     * @param h - Height of the rectangle.
+     * @param delta - 1 to add, -1 to remove.
+     */
+    private void cover(double x, double y, double w, double h, int delta) {
+        int cx0 = Math.max(0, (int) Math.ceil((x + MAX_ERROR) * CELLS));
+        int cy0 = Math.max(0, (int) Math.ceil((y + MAX_ERROR) * CELLS));
+        int cx1 = Math.min(CELLS, (int) Math.floor((x + w - MAX_ERROR) * CELLS));
+        int cy1 = Math.min(CELLS, (int) Math.floor((y + h - MAX_ERROR) * CELLS));
+        for (int cy = cy0; cy < cy1; cy++) {
+            for (int cx = cx0; cx < cx1; cx++) {
+                int c = cy * CELLS + cx;
+                cover[c] += delta;
+                if (delta < 0 && cover[c] == 0) {
+                    drop_fields_near(cx, cy);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop the fields that reached a neighbour of a freed cell, as the cell may now shorten them.
+     * Fields are still lower bounds when a cell gets blocked, so they are kept then.
+     * @param cx - Column of the freed cell.
+     * @param cy - Row of the freed cell.
+     */
+    private void drop_fields_near(int cx, int cy) {
+        Iterator<int[]> it = fields.values().iterator();
+        while (it.hasNext()) {
+            int[] field = it.next();
+            if ((cx > 0 && field[cy * CELLS + cx - 1] >= 0) || (cx < CELLS - 1 && field[cy * CELLS + cx + 1] >= 0) ||
+                    (cy > 0 && field[(cy - 1) * CELLS + cx] >= 0) || (cy < CELLS - 1 && field[(cy + 1) * CELLS + cx] >= 0)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Update the occupancy around the boxes moved since last call.
+     * @param primitive - The new environment.
+     */
+    private void update(PrimitiveEnvironment primitive) {
+        this.primitive = primitive;
+        for (int i = 0; i < xs.length; i++) {
+            if (xs[i] != primitive.xs[i] || ys[i] != primitive.ys[i] || widths[i] != primitive.widths[i]) {
+                /* Block the new cells first, so no cell is freed only to be blocked again. */
+                cover(primitive.xs[i], primitive.ys[i], primitive.widths[i], primitive.widths[i], 1);
+                cover(xs[i], ys[i], widths[i], widths[i], -1);
+                xs[i] = primitive.xs[i];
+                ys[i] = primitive.ys[i];
+                widths[i] = primitive.widths[i];
+            }
+        }
+    }
+
+    /**
+     * Breadth first search from the goal cell over the free cells.
+     * @param goalCell - The goal cell.
+     * @return - The field.
+     */
+    private int[] search(int goalCell) {
+        int[] field = new int[CELLS * CELLS];
+        Arrays.fill(field, -1);
+        int[] queue = new int[CELLS * CELLS];
+        int head = 0;
+        int tail = 0;
+        field[goalCell] = 0;
+        queue[tail++] = goalCell;
+        while (head < tail) {
+            int c = queue[head++];
+            int cx = c % CELLS;
+            int cy = c / CELLS;
+            if (cx > 0) {
+                tail = visit(field, queue, tail, c - 1, field[c]);
+            }
+            if (cx < CELLS - 1) {
+                tail = visit(field, queue, tail, c + 1, field[c]);
+            }
+            if (cy > 0) {
+                tail = visit(field, queue, tail, c - CELLS, field[c]);
+            }
+            if (cy < CELLS - 1) {
+                tail = visit(field, queue, tail, c + CELLS, field[c]);
+            }
+        }
+        return field;
+    }
+
+    /**
+     * Visit a cell in breadth first search.
+     * @param field - The field.
+     * @param queue - The queue of cells.
+     * @param tail - The tail of the queue.
+     * @param c - The cell.
+     * @param steps - Steps of the cell visited from.
+     * @return - The new tail of the queue.
+     */
+    private int visit(int[] field, int[] queue, int tail, int c, int steps) {
+        if (field[c] < 0 && cover[c] == 0) {
+            field[c] = steps + 1;
+            queue[tail++] = c;
+        }
+        return tail;
+    }
+}
@@ -2,16 +2,20 @@ package robotAstar;
 
 import java.util.*;
 import java.awt.geom.*;
-import javafx.util.Pair;
 import problem.*;
 import utility.*;
 import static utility.Direction.*;
 
 /**
  * This class represents a node in robot astar search.
+ * The children are generated in the style of jump point search, so a
+ * straight free run is one node instead of one node per unit step.
  */
 public class RobotNode implements Utility {
 
+    /* The longest jump, in steps. */
+    private static final int MAX_JUMP = 100;
+
     /* The width of the robot. */
     private double robotWidth;
 
@@ -30,6 +34,24 @@ public class RobotNode implements Utility {
     /* The cost to goal of this state. */
     private double cost;
 
+    /* The canonical key of this state. */
+    private StateKey key;
+
+    /* The cost to go of the robot centre, shared by all nodes of a search. */
+    private int[] field;
+
+    /* The direction of the jump from the parent to this state. */
+    private Direction direction;
+
+    /* The number of steps of the jump from the parent to this state. */
+    private int steps;
+
+    /* The state this one is reached from, null for the start. */
+    private RobotNode parent;
+
+    /* The number of collision checks made to get the children of this state. */
+    private int checks;
+
     /**
      * Constructor.
      * @param environment - Environment.
@@ -45,7 +67,26 @@ public class RobotNode implements Utility {
         if (minimumStep < 0.001) {
             minimumStep = 0.001;
         }
+        field = DistanceField.field_to(environment, goal);
+        update_cost();
+        key = new StateKey(current);
+    }
+
+    /**
+     * Constructor of a child, sharing everything of the parent but the robot config.
+     * @param parent - The parent.
+     * @param current - The current robot config.
+     */
+    private RobotNode(RobotNode parent, RobotConfig current) {
+        this.parent = parent;
+        environment = parent.environment;
+        this.current = current;
+        goal = parent.goal;
+        robotWidth = parent.robotWidth;
+        minimumStep = parent.minimumStep;
+        field = parent.field;
         update_cost();
+        key = new StateKey(current);
     }
 
     /**
@@ -56,12 +97,32 @@ public class RobotNode implements Utility {
         return cost;
     }
 
+    /**
+     * Get the state this one is reached from.
+     * @return - The parent state, null for the start.
+     */
+    public RobotNode parent() {
+        return parent;
+    }
+
+    /**
+     * Get the number of collision checks made to get the children of this state.
+     * A jump checks every step and its sides, so this is the work of an expansion.
+     * @return - The number of collision checks.
+     */
+    public int checks() {
+        return checks;
+    }
+
     /**
      * Update the cost of this state, called in constructor.
      */
     private void update_cost() {
         cost = 0;
-        cost += DISTANCE_WEIGHT * Math.sqrt(Math.pow((this.current.getPos().getX() - this.goal.getPos().getX()), 2) + Math.pow((this.current.getPos().getY() - this.goal.getPos().getY()), 2));
+        double distance = Math.sqrt(Math.pow((this.current.getPos().getX() - this.goal.getPos().getX()), 2) + Math.pow((this.current.getPos().getY() - this.goal.getPos().getY()), 2));
+        /* The way around boxes and obstacles, when it is longer than the straight line. */
+        distance = Math.max(distance, DistanceField.distance(field, current.getPos().getX(), current.getPos().getY()));
+        cost += DISTANCE_WEIGHT * distance;
         cost += ANGLE_WEIGHT * Math.abs(this.current.getOrientation() - this.goal.getOrientation());
     }
 
@@ -71,11 +132,7 @@ public class RobotNode implements Utility {
      */
     @Override
     public int hashCode() {
-        int result = 0;
-        result += current.getPos().getX() * 1010;
-        result += current.getPos().getY() * 1020;
-        result += current.getOrientation() * 1030;
-        return result;
+        return key.hashCode();
     }
 
     /**
@@ -87,7 +144,7 @@ public class RobotNode implements Utility {
     public boolean equals(Object o) {
         if (o instanceof RobotNode) {
             RobotNode rn = (RobotNode) o;
-            return is_two_robots_equal(current, rn.current);
+            return key.equals(rn.key);
         }
         return false;
     }
@@ -101,35 +158,15 @@ public class RobotNode implements Utility {
     }
 
     /**
-     * Get the action in output string format.
-     * @param thisX - X position.
-     * @param thisY - Y position.
-     * @param thisA - Angle position.
-     * @param environment - Environment.
-     * @return - Action in string.
-     */
-    private String get_action_in_string(double thisX, double thisY, double thisA, Environment environment) {
-        String action = String.format("%.3f %.3f %.3f", thisX, thisY, thisA);
-        for (Box box : environment.movingObjects) {
-            double width = box.getWidth();
-            action = action.concat(String.format(" %.3f %.3f", box.getPos().getX() + 0.5 * width, box.getPos().getY() + 0.5 * width));
-        }
-        return action;
-    }
-
-    /**
-     * Set the robot further in the given direction, used in get child action of astar.
-     * @param environment - The environment.
+     * Get the robot config one step further in the given direction.
+     * @param rc - The robot config.
      * @param direction - The given direction.
-     * @param result - A result of robotNode and corresponding action.
+     * @return - The robot config after the step.
      */
-    private void walk_further(Environment environment, Direction direction, List<Pair<RobotNode, String>> result) {
-        double startX = current.getPos().getX();
-        double startY = current.getPos().getY();
-        double startA = current.getOrientation();
-        double thisX = startX;
-        double thisY = startY;
-        double thisA = startA;
+    private RobotConfig step(RobotConfig rc, Direction direction) {
+        double thisX = rc.getPos().getX();
+        double thisY = rc.getPos().getY();
+        double thisA = rc.getOrientation();
 
         switch(direction) {
             case UP:
@@ -158,29 +195,156 @@ public class RobotNode implements Utility {
                 break;
         }
 
-        RobotConfig rc = new RobotConfig(new Point2D.Double(thisX, thisY), thisA);
+        return new RobotConfig(new Point2D.Double(thisX, thisY), thisA);
+    }
+
+    /**
+     * Check if a robot config is free of collision.
+     * @param rc - The robot config.
+     * @return - True if no collision, false otherwise.
+     */
+    private boolean is_free(RobotConfig rc) {
+        checks++;
+        PrimitiveEnvironment primitive = environment.get_primitive();
+        return primitive.no_collision_for_all(primitive, rc, robotWidth);
+    }
 
-        if (noCollisionForAll(environment, environment, rc, robotWidth)) {
-            String s = get_action_in_string(thisX, thisY, thisA, environment);
-            result.add(new Pair<>(new RobotNode(environment, rc, goal), s));
+    /**
+     * Check if two directions are along the same axis.
+     * @param a - Direction a.
+     * @param b - Direction b.
+     * @return - True if they are, false otherwise.
+     */
+    private static boolean is_same_axis(Direction a, Direction b) {
+        return axis_of(a) == axis_of(b);
+    }
+
+    /**
+     * Get the axis of a direction.
+     * @param direction - The direction.
+     * @return - 0 for x, 1 for y, 2 for the angle.
+     */
+    private static int axis_of(Direction direction) {
+        switch (direction) {
+            case LEFT:
+            case RIGHT:
+                return 0;
+            case UP:
+            case DOWN:
+                return 1;
+            default:
+                return 2;
+        }
+    }
+
+    /**
+     * Check if a robot config lines up with the goal on the axis of the given direction.
+     * @param rc - The robot config.
+     * @param direction - The given direction.
+     * @return - True if it does, false otherwise.
+     */
+    private boolean is_aligned(RobotConfig rc, Direction direction) {
+        switch (axis_of(direction)) {
+            case 0:
+                return Math.abs(rc.getPos().getX() - goal.getPos().getX()) < 0.5 * UNIT_STEP;
+            case 1:
+                return Math.abs(rc.getPos().getY() - goal.getPos().getY()) < 0.5 * UNIT_STEP;
+            default:
+                return rc.getOrientation() == goal.getOrientation();
+        }
+    }
+
+    /**
+     * Jump in the given direction, used in get child action of astar.
+     * The robot keeps stepping while the step is free, and stops where the
+     * route may need to turn: when it lines up with the goal, when a step in
+     * another direction opens up that was blocked one step before, or when the
+     * jump reaches MAX_JUMP. All the configs skipped are symmetric to routes
+     * through the stop point, so they are not added as nodes.
+     * @param direction - The given direction.
+     * @param result - A list of robotNode.
+     */
+    private void jump_further(Direction direction, List<RobotNode> result) {
+        Direction[] others = Direction.values();
+        boolean[] freeBefore = new boolean[others.length];
+        for (int i = 0; i < others.length; i++) {
+            freeBefore[i] = !is_same_axis(others[i], direction) && is_free(step(current, others[i]));
+        }
+
+        RobotConfig rc = current;
+        for (int steps = 1; steps <= MAX_JUMP; steps++) {
+            RobotConfig next = step(rc, direction);
+            if (!is_free(next)) {
+                if (steps > 1) {
+                    add_child(rc, direction, steps - 1, result);
+                }
+                return;
+            }
+            rc = next;
+            if (is_aligned(rc, direction) || is_two_robots_equal(rc, goal)) {
+                add_child(rc, direction, steps, result);
+                return;
+            }
+            boolean forced = false;
+            for (int i = 0; i < others.length; i++) {
+                if (is_same_axis(others[i], direction)) {
+                    continue;
+                }
+                boolean free = is_free(step(rc, others[i]));
+                if (free && !freeBefore[i]) {
+                    forced = true;
+                }
+                freeBefore[i] = free;
+            }
+            if (forced || steps == MAX_JUMP) {
+                add_child(rc, direction, steps, result);
+                return;
+            }
         }
     }
 
+    /**
+     * Add a child reached by jumping.
+     * @param rc - The config of the child.
+     * @param direction - The direction of the jump.
+     * @param steps - The number of steps of the jump.
+     * @param result - A list of robotNode.
+     */
+    private void add_child(RobotConfig rc, Direction direction, int steps, List<RobotNode> result) {
+        RobotNode child = new RobotNode(this, rc);
+        child.direction = direction;
+        child.steps = steps;
+        result.add(child);
+    }
+
     /**
      * Get the children of this state.
-     * @return - A list of robotNode and corresponding action.
+     * @return - A list of robotNode.
      */
-    public List<Pair<RobotNode, String>> get_children() {
+    public List<RobotNode> get_children() {
 
-        List<Pair<RobotNode, String>> result = new ArrayList<>();
+        List<RobotNode> result = new ArrayList<>();
 
-        walk_further(environment, UP, result);
-        walk_further(environment, DOWN, result);
-        walk_further(environment, LEFT, result);
-        walk_further(environment, RIGHT, result);
-        walk_further(environment, CLOCK_WISE, result);
-        walk_further(environment, ANTI_CLOCKWISE, result);
+        jump_further(UP, result);
+        jump_further(DOWN, result);
+        jump_further(LEFT, result);
+        jump_further(RIGHT, result);
+        jump_further(CLOCK_WISE, result);
+        jump_further(ANTI_CLOCKWISE, result);
 
         return result;
     }
+
+    /**
+     * Expand the jump from this state to the given child into unit steps.
+     * @param child - The child.
+     * @param result - The route, the steps are appended to it.
+     */
+    public void route_to(RobotNode child, Route result) {
+        RobotConfig rc = current;
+        for (int i = 0; i < child.steps; i++) {
+            rc = step(rc, child.direction);
+            result.add(rc, environment);
+        }
+    }
 }
\ No newline at end of file
@@ -1,7 +1,6 @@
 package robotAstar;
 
 import java.util.*;
-import javafx.util.Pair;
 import problem.*;
 import utility.*;
 
@@ -16,21 +15,21 @@ public class RobotNodeAstar implements Utility {
     /**
      * Construct the robot route for the problem.
      * @param thisState - The goal state.
-     * @param meta - The route information.
-     * @return - A list of Actions.
+     * @return - The route, in unit steps.
      */
-    private static List<String> construct_robot_route(RobotNode thisState, Map<RobotNode, Pair<RobotNode, String>> meta) {
-        List<String> result = new ArrayList<>();
-        Stack<String> actions = new Stack<>();
+    private static Route construct_robot_route(RobotNode thisState) {
+        Route result = new Route();
+        Stack<RobotNode> states = new Stack<>();
         RobotNode state = thisState;
-        while (meta.get(state).getKey() != null) {
-            Pair<RobotNode, String> parent_action = meta.get(state);
-            actions.push(parent_action.getValue());
-            state = parent_action.getKey();
+        while (state != null) {
+            states.push(state);
+            state = state.parent();
         }
-        int size = actions.size();
-        for (int i = 0; i < size; i++) {
-            result.add(actions.pop());
+        RobotNode parent = states.pop();
+        while (!states.isEmpty()) {
+            RobotNode child = states.pop();
+            parent.route_to(child, result);
+            parent = child;
         }
         return result;
     }
@@ -40,47 +39,24 @@ public class RobotNodeAstar implements Utility {
      * @param action - The action to be solved.
      * @param current - The current robot config.
      * @param result - The result.
-     * @param maxCount - The max computation steps.
+     * @param maxCount - The max number of collision checks.
      * @return - True if solved, false otherwise.
      */
-    public static boolean solve(Action action, RobotConfig current, List<String> result, int maxCount) {
-
-        RobotNode initial = new RobotNode(action.environment, current, action.pushPosition);
-
-        Map<RobotNode, Pair<RobotNode, String>> meta = new HashMap<>();
-        Comparator<RobotNode> comparator = new RobotNodeComparator();
-        PriorityQueue<RobotNode> toBeVisited = new PriorityQueue<>(11, comparator);
-        Set<RobotNode> visited = new HashSet<>();
-
-        meta.put(initial, new Pair<>(null, null));
-        toBeVisited.add(initial);
-
-        while(toBeVisited.size() != 0) {
-
-            if (visited.size() > maxCount) {
-                break;
-            }
-
-            RobotNode thisState = toBeVisited.remove();
-            visited.add(thisState);
-
-            if (thisState.is_goal()) {
-                result.addAll(construct_robot_route(thisState, meta));
-                return true;
-            }
-
-            List<Pair<RobotNode, String>> stateActions = thisState.get_children();
+    public static boolean solve(Action action, RobotConfig current, Route result, int maxCount) {
+        return solve(current, action.pushPosition, action.environment, result, maxCount, Deadline.NONE);
+    }
 
-            for (Pair<RobotNode, String> p : stateActions) {
-                RobotNode child = p.getKey();
-                String route = p.getValue();
-                if (!visited.contains(child) && !toBeVisited.contains(child)) {
-                    toBeVisited.add(child);
-                    meta.put(child, new Pair<>(thisState, route));
-                }
-            }
-        }
-        return false;
+    /**
+     * Solve the transition from a start robot config to a goal robot config, until the deadline.
+     * @param action - The action to be solved.
+     * @param current - The current robot config.
+     * @param result - The result.
+     * @param maxCount - The max number of collision checks.
+     * @param deadline - The deadline.
+     * @return - True if solved, false otherwise.
+     */
+    public static boolean solve(Action action, RobotConfig current, Route result, int maxCount, Deadline deadline) {
+        return solve(current, action.pushPosition, action.environment, result, maxCount, deadline);
     }
 
     /**
@@ -89,51 +65,63 @@ public class RobotNodeAstar implements Utility {
      * @param next - The next robot config.
      * @param environment - The environment.
      * @param result - The result.
-     * @param maxCount - The max computation steps.
+     * @param maxCount - The max number of collision checks.
+     * @return - True if solved, false otherwise.
+     */
+    public static boolean solve(RobotConfig current, RobotConfig next, Environment environment, Route result, int maxCount) {
+        return solve(current, next, environment, result, maxCount, Deadline.NONE);
+    }
+
+    /**
+     * Solve the transition from a start robot config to a goal robot config, until the deadline.
+     * @param current - The start robot config.
+     * @param next - The next robot config.
+     * @param environment - The environment.
+     * @param result - The result.
+     * @param maxCount - The max number of collision checks.
+     * @param deadline - The deadline.
      * @return - True if solved, false otherwise.
      */
-    public static boolean solve(RobotConfig current, RobotConfig next, Environment environment, List<String> result, int maxCount) {
+    public static boolean solve(RobotConfig current, RobotConfig next, Environment environment, Route result, int maxCount,
+                                Deadline deadline) {
 
         RobotNode initial = new RobotNode(environment, current, next);
 
-        Map<RobotNode, Pair<RobotNode, String>> meta = new HashMap<>();
         Comparator<RobotNode> comparator = new RobotNodeComparator();
-        PriorityQueue<RobotNode> toBeVisited = new PriorityQueue<>(11, comparator);
-        Set<RobotNode> visited = new HashSet<>();
+        NodeQueue<RobotNode> toBeVisited = new NodeQueue<>(comparator);
+        LatticeSet visited = new LatticeSet();
+        /* The budget is charged per collision check, as one jump may check many steps. */
+        int checks = 0;
 
-        meta.put(initial, new Pair<>(null, null));
         toBeVisited.add(initial);
 
         while(toBeVisited.size() != 0) {
 
-            if (visited.size() > maxCount) {
+            if (checks > maxCount || deadline.expired()) {
                 break;
             }
 
             RobotNode thisState = toBeVisited.remove();
-            visited.add(thisState);
+            visited.add(thisState.current);
 
             if (thisState.is_goal()) {
-                result.addAll(construct_robot_route(thisState, meta));
+                result.add_all(construct_robot_route(thisState));
                 return true;
             }
 
-            List<Pair<RobotNode, String>> stateActions = thisState.get_children();
-
-            for (Pair<RobotNode, String> p : stateActions) {
-                RobotNode child = p.getKey();
-                String route = p.getValue();
-                if (!visited.contains(child) && !toBeVisited.contains(child)) {
+            for (RobotNode child : thisState.get_children()) {
+                if (!visited.contains(child.current) && !toBeVisited.contains(child)) {
                     toBeVisited.add(child);
-                    meta.put(child, new Pair<>(thisState, route));
                 }
             }
+            checks += thisState.checks();
         }
         return false;
     }
 
     /**
-     * Solve the transition from a start robot config to goal robot config quick.
+     * Solve the transition from a start robot config to goal robot config quick,
+     * within 6000 collision checks.
      * @param current - Start config.
      * @param next - Goal config.
      * @param environment - Environment.
@@ -143,31 +131,30 @@ public class RobotNodeAstar implements Utility {
 
         RobotNode initial = new RobotNode(environment, current, next);
         Comparator<RobotNode> comparator = new RobotNodeComparator();
-        PriorityQueue<RobotNode> toBeVisited = new PriorityQueue<>(11, comparator);
-        Set<RobotNode> visited = new HashSet<>();
+        NodeQueue<RobotNode> toBeVisited = new NodeQueue<>(comparator);
+        LatticeSet visited = new LatticeSet();
+        int checks = 0;
         toBeVisited.add(initial);
 
         while(toBeVisited.size() != 0) {
 
-            if (visited.size() > 1000) {
+            if (checks > 6000) {
                 break;
             }
 
             RobotNode thisState = toBeVisited.remove();
-            visited.add(thisState);
+            visited.add(thisState.current);
 
             if (thisState.is_goal()) {
                 return true;
             }
 
-            List<Pair<RobotNode, String>> stateActions = thisState.get_children();
-
-            for (Pair<RobotNode, String> p : stateActions) {
-                RobotNode child = p.getKey();
-                if (!visited.contains(child) && !toBeVisited.contains(child)) {
+            for (RobotNode child : thisState.get_children()) {
+                if (!visited.contains(child.current) && !toBeVisited.contains(child)) {
                     toBeVisited.add(child);
                 }
             }
+            checks += thisState.checks();
         }
         return false;
     }
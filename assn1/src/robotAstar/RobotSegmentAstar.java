@@ -0,0 +1,123 @@
+package robotAstar;
+
+import java.util.*;
+import problem.*;
+import utility.*;
+
+/**
+ * This class is used to solve robot segment problem.
+ * From one robot config to another robot config, over long straight moves
+ * and rotations, each validated by one swept volume test.
+ * The segments are expanded into unit steps only when written to the route.
+ */
+public class RobotSegmentAstar implements Utility {
+
+    /**
+     * Construct the robot route for the problem, expanded into unit steps.
+     * @param thisState - The goal state.
+     * @param result - The result, the route is appended to it.
+     */
+    private static void construct_robot_route(RobotSegmentNode thisState, Route result) {
+        Stack<RobotSegmentNode> states = new Stack<>();
+        RobotSegmentNode state = thisState;
+        while (state != null) {
+            states.push(state);
+            state = state.parent();
+        }
+        RobotSegmentNode parent = states.pop();
+        while (!states.isEmpty()) {
+            RobotSegmentNode child = states.pop();
+            parent.expand_to(child, result);
+            parent = child;
+        }
+    }
+
+    /**
+     * Solve the transition from a start robot config to a goal robot config.
+     * @param action - The action to be solved.
+     * @param current - The current robot config.
+     * @param result - The result.
+     * @param maxCount - The max computation steps.
+     * @return - True if solved, false otherwise.
+     */
+    public static boolean solve(Action action, RobotConfig current, Route result, int maxCount) {
+        return solve(current, action.pushPosition, action.environment, result, maxCount, Deadline.NONE);
+    }
+
+    /**
+     * Solve the transition from a start robot config to a goal robot config, until the deadline.
+     * @param action - The action to be solved.
+     * @param current - The current robot config.
+     * @param result - The result.
+     * @param maxCount - The max computation steps.
+     * @param deadline - The deadline.
+     * @return - True if solved, false otherwise.
+     */
+    public static boolean solve(Action action, RobotConfig current, Route result, int maxCount, Deadline deadline) {
+        return solve(current, action.pushPosition, action.environment, result, maxCount, deadline);
+    }
+
+    /**
+     * Solve the transition from a start robot config to a goal robot config.
+     * @param current - The start robot config.
+     * @param next - The next robot config.
+     * @param environment - The environment.
+     * @param result - The result.
+     * @param maxCount - The max computation steps.
+     * @return - True if solved, false otherwise.
+     */
+    public static boolean solve(RobotConfig current, RobotConfig next, Environment environment, Route result, int maxCount) {
+        return solve(current, next, environment, result, maxCount, Deadline.NONE);
+    }
+
+    /**
+     * Solve the transition from a start robot config to a goal robot config, until the deadline.
+     * @param current - The start robot config.
+     * @param next - The next robot config.
+     * @param environment - The environment.
+     * @param result - The result.
+     * @param maxCount - The max computation steps.
+     * @param deadline - The deadline.
+     * @return - True if solved, false otherwise.
+     */
+    public static boolean solve(RobotConfig current, RobotConfig next, Environment environment, Route result, int maxCount,
+                                Deadline deadline) {
+
+        RobotSegmentNode initial = new RobotSegmentNode(environment, current, next);
+
+        Comparator<RobotSegmentNode> comparator = new RobotSegmentNodeComparator();
+        NodeQueue<RobotSegmentNode> toBeVisited = new NodeQueue<>(comparator);
+        LatticeSet visited = new LatticeSet();
+
+        toBeVisited.add(initial);
+
+        while(toBeVisited.size() != 0) {
+
+            if (visited.size() > maxCount || deadline.expired()) {
+                break;
+            }
+
+            RobotSegmentNode thisState = toBeVisited.remove();
+            visited.add(thisState.current);
+
+            if (thisState.is_goal()) {
+                construct_robot_route(thisState, result);
+                return true;
+            }
+
+            for (RobotSegmentNode child : thisState.get_children()) {
+                if (visited.contains(child.current)) {
+                    continue;
+                }
+                RobotSegmentNode open = toBeVisited.get(child);
+                if (open == null) {
+                    toBeVisited.add(child);
+                } else if (child.path_cost() < open.path_cost()) {
+                    /* The child replaces the open state, with its parent. */
+                    toBeVisited.decrease_key(child);
+                }
+            }
+        }
+        return false;
+    }
+}
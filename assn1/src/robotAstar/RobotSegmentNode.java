@@ -0,0 +1,368 @@
+package robotAstar;
+
+import java.util.*;
+import java.awt.geom.*;
+import problem.*;
+import utility.*;
+import static utility.Direction.*;
+
+/**
+ * This class represents a node in robot segment astar search.
+ * A child is reached by one long straight move or one rotation, which is
+ * validated with a single swept volume test instead of walking unit steps.
+ * The cost of a node is counted in unit steps, so it equals the number of
+ * lines the segment takes in the output.
+ */
+public class RobotSegmentNode implements Utility {
+
+    /* The shortest translation tried, in unit steps. */
+    private static final int MIN_JUMP = 8;
+
+    /* The orientations tried for rotation besides the goal orientation. */
+    private static final double[] ORIENTATIONS = {0, 1.571};
+
+    /* The width of the robot. */
+    private double robotWidth;
+
+    /* The minimumStep of the angle. */
+    private double minimumStep;
+
+    /* The current robot config. */
+    public RobotConfig current;
+
+    /* The goal robot config. */
+    private RobotConfig goal;
+
+    /* The environment. */
+    private Environment environment;
+
+    /* The cost to goal of this state. */
+    private double cost;
+
+    /* The cost from start to this state. */
+    private double pathCost;
+
+    /* The cost to go of the robot centre, shared by all nodes of a search. */
+    private int[] field;
+
+    /* The canonical key of this state. */
+    private StateKey key;
+
+    /* The state this one is reached from, null for the start. */
+    private RobotSegmentNode parent;
+
+    /**
+     * Constructor.
+     * @param environment - Environment.
+     * @param current - The current robot config.
+     * @param goal - The goal robot config.
+     */
+    public RobotSegmentNode(Environment environment, RobotConfig current, RobotConfig goal) {
+        this.environment = environment;
+        this.current = current;
+        this.goal = goal;
+        robotWidth = environment.movingObjects.get(0).getWidth();
+        minimumStep = Math.round(Math.acos(1 - 2 * UNIT_STEP * UNIT_STEP / (robotWidth * robotWidth)) * 1000d) / 1000d - UNIT_STEP;
+        if (minimumStep < 0.001) {
+            minimumStep = 0.001;
+        }
+        field = DistanceField.field_to(environment, goal);
+        update_cost();
+        key = new StateKey(current);
+    }
+
+    /**
+     * Constructor of a child, sharing everything of the parent but the robot config.
+     * @param parent - The parent.
+     * @param current - The current robot config.
+     */
+    private RobotSegmentNode(RobotSegmentNode parent, RobotConfig current) {
+        this.parent = parent;
+        environment = parent.environment;
+        this.current = current;
+        goal = parent.goal;
+        robotWidth = parent.robotWidth;
+        minimumStep = parent.minimumStep;
+        field = parent.field;
+        update_cost();
+        key = new StateKey(current);
+    }
+
+    /**
+     * Get the state this one is reached from.
+     * @return - The parent state, null for the start.
+     */
+    public RobotSegmentNode parent() {
+        return parent;
+    }
+
+    /**
+     * Update the cost of this state, called in constructor.
+     */
+    private void update_cost() {
+        int translation = translation_steps(current.getPos().getX(), goal.getPos().getX()) +
+                translation_steps(current.getPos().getY(), goal.getPos().getY());
+        /* The way around boxes and obstacles, when it is longer than the straight moves. */
+        translation = Math.max(translation, translation_steps(0,
+                DistanceField.distance(field, current.getPos().getX(), current.getPos().getY())));
+        cost = translation + rotation_steps(current.getOrientation(), goal.getOrientation());
+    }
+
+    /**
+     * Get the cost of this state.
+     * @return - The cost of this state.
+     */
+    public double cost() {
+        return cost;
+    }
+
+    /**
+     * Get the path cost of this state.
+     * @return - The path cost.
+     */
+    public double path_cost() {
+        return pathCost;
+    }
+
+    /**
+     * Set the path cost of this state.
+     * @param pathCost - The path cost.
+     */
+    public void set_path_cost(double pathCost) {
+        this.pathCost = pathCost;
+    }
+
+    /**
+     * Get the priority of this state in astar search.
+     * @return - Path cost plus cost to goal.
+     */
+    public double priority() {
+        return pathCost + cost;
+    }
+
+    /**
+     * Get the hash code for this class.
+     * @return - The hash code.
+     */
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    /**
+     * Check if this state equals to given object.
+     * @param o - The given object.
+     * @return - True if equals, false otherwise.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof RobotSegmentNode) {
+            RobotSegmentNode rn = (RobotSegmentNode) o;
+            return key.equals(rn.key);
+        }
+        return false;
+    }
+
+    /**
+     * Check if this node is goal.
+     * @return - True if it is, false otherwise.
+     */
+    public boolean is_goal() {
+        return is_two_robots_equal(current, goal);
+    }
+
+    /**
+     * Get the number of unit steps of a translation.
+     * @param from - Start coordinate.
+     * @param to - End coordinate.
+     * @return - The number of steps.
+     */
+    private static int translation_steps(double from, double to) {
+        return (int) Math.ceil(Math.abs(to - from) / UNIT_STEP - MAX_ERROR);
+    }
+
+    /**
+     * Get the number of steps of a rotation.
+     * @param from - Start orientation.
+     * @param to - End orientation.
+     * @return - The number of steps.
+     */
+    private int rotation_steps(double from, double to) {
+        return (int) Math.ceil(Math.abs(to - from) / minimumStep - MAX_ERROR);
+    }
+
+    /**
+     * Get the robot config after moving in the given direction.
+     * @param direction - The given direction.
+     * @param length - The length of the move.
+     * @return - The robot config.
+     */
+    private RobotConfig moved(Direction direction, double length) {
+        double x = current.getPos().getX();
+        double y = current.getPos().getY();
+        switch (direction) {
+            case UP:
+                y += length;
+                break;
+            case DOWN:
+                y -= length;
+                break;
+            case LEFT:
+                x -= length;
+                break;
+            case RIGHT:
+                x += length;
+                break;
+        }
+        return new RobotConfig(new Point2D.Double(x, y), current.getOrientation());
+    }
+
+    /**
+     * Check if the robot can move in the given direction.
+     * @param direction - The given direction.
+     * @param steps - The length of the move in unit steps.
+     * @return - True if no collision, false otherwise.
+     */
+    private boolean can_move(Direction direction, int steps) {
+        PrimitiveEnvironment primitive = environment.get_primitive();
+        return primitive.no_collision_for_translation(current, moved(direction, steps * UNIT_STEP), robotWidth);
+    }
+
+    /**
+     * Get the longest free move in the given direction, by doubling then bisection.
+     * @param direction - The given direction.
+     * @return - The length of the move in unit steps.
+     */
+    private int free_run(Direction direction) {
+        int limit = (int) Math.round(1 / UNIT_STEP);
+        int free = 0;
+        int blocked = 1;
+        while (blocked <= limit && can_move(direction, blocked)) {
+            free = blocked;
+            blocked *= 2;
+        }
+        blocked = Math.min(blocked, limit + 1);
+        while (blocked - free > 1) {
+            int middle = (free + blocked) / 2;
+            if (can_move(direction, middle)) {
+                free = middle;
+            } else {
+                blocked = middle;
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Add a child of this state, if the move to it is free of collision.
+     * @param rc - The robot config of the child.
+     * @param steps - The cost of the move.
+     * @param rotation - True if the move is a rotation, false if a translation.
+     * @param result - A list of children.
+     */
+    private void add_child(RobotConfig rc, int steps, boolean rotation, List<RobotSegmentNode> result) {
+        if (steps <= 0) {
+            return;
+        }
+        PrimitiveEnvironment primitive = environment.get_primitive();
+        if (rotation ? primitive.no_collision_for_rotation(current, rc, robotWidth) :
+                primitive.no_collision_for_translation(current, rc, robotWidth)) {
+            RobotSegmentNode child = new RobotSegmentNode(this, rc);
+            child.set_path_cost(pathCost + steps);
+            result.add(child);
+        }
+    }
+
+    /**
+     * Add the children reached by moving in the given direction:
+     * the longest free move, doubling jumps up to it, and the move
+     * that lines up with the goal.
+     * @param direction - The given direction.
+     * @param result - A list of children.
+     */
+    private void jump_further(Direction direction, List<RobotSegmentNode> result) {
+        int free = free_run(direction);
+        if (free == 0) {
+            return;
+        }
+        for (int steps = MIN_JUMP; steps < free; steps *= 2) {
+            add_child(moved(direction, steps * UNIT_STEP), steps, false, result);
+        }
+        add_child(moved(direction, free * UNIT_STEP), free, false, result);
+
+        double align;
+        switch (direction) {
+            case UP:
+                align = goal.getPos().getY() - current.getPos().getY();
+                break;
+            case DOWN:
+                align = current.getPos().getY() - goal.getPos().getY();
+                break;
+            case LEFT:
+                align = current.getPos().getX() - goal.getPos().getX();
+                break;
+            default:
+                align = goal.getPos().getX() - current.getPos().getX();
+                break;
+        }
+        if (align > MAX_ERROR && align < (free + 1) * UNIT_STEP) {
+            add_child(moved(direction, align), translation_steps(0, align), false, result);
+        }
+    }
+
+    /**
+     * Add the child reached by rotating to the given orientation.
+     * @param orientation - The given orientation.
+     * @param result - A list of children.
+     */
+    private void rotate_further(double orientation, List<RobotSegmentNode> result) {
+        if (Math.abs(orientation - current.getOrientation()) < MAX_ERROR) {
+            return;
+        }
+        RobotConfig rc = new RobotConfig(current.getPos(), orientation);
+        add_child(rc, rotation_steps(current.getOrientation(), orientation), true, result);
+    }
+
+    /**
+     * Get the children of this state.
+     * @return - A list of robotSegmentNode.
+     */
+    public List<RobotSegmentNode> get_children() {
+
+        List<RobotSegmentNode> result = new ArrayList<>();
+
+        jump_further(UP, result);
+        jump_further(DOWN, result);
+        jump_further(LEFT, result);
+        jump_further(RIGHT, result);
+        rotate_further(goal.getOrientation(), result);
+        for (double orientation : ORIENTATIONS) {
+            if (Math.abs(orientation - goal.getOrientation()) >= MAX_ERROR) {
+                rotate_further(orientation, result);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Expand the move from this state to the given child into unit steps.
+     * @param child - The child.
+     * @param result - The route, the steps are appended to it.
+     */
+    public void expand_to(RobotSegmentNode child, Route result) {
+        double startX = current.getPos().getX();
+        double startY = current.getPos().getY();
+        double startA = current.getOrientation();
+        double dx = child.current.getPos().getX() - startX;
+        double dy = child.current.getPos().getY() - startY;
+        double da = child.current.getOrientation() - startA;
+        int steps = Math.max(translation_steps(0, dx) + translation_steps(0, dy), rotation_steps(0, da));
+        for (int i = 1; i < steps; i++) {
+            double t = (double) i / steps;
+            RobotConfig rc = new RobotConfig(new Point2D.Double(startX + t * dx, startY + t * dy), startA + t * da);
+            result.add(rc, environment);
+        }
+        result.add(child.current, environment);
+    }
+}
@@ -0,0 +1,25 @@
+package robotAstar;
+
+import java.util.Comparator;
+
+/**
+ * Used for comparing two robot segment nodes.
+ */
+public class RobotSegmentNodeComparator implements Comparator<RobotSegmentNode> {
+
+    /**
+     * Compare two robot segment nodes.
+     * @param bn1 - robot segment node 1.
+     * @param bn2 - robot segment node 2.
+     * @return - 1 if bn1 > bn2, 0 if equals, -1 if bn1 < bn2.
+     */
+    public int compare(RobotSegmentNode bn1, RobotSegmentNode bn2) {
+        if (bn1.priority() < bn2.priority()) {
+            return -1;
+        } else if (bn1.priority() > bn2.priority()) {
+            return 1;
+        } else {
+            return 0;
+        }
+    }
+}
\ No newline at end of file
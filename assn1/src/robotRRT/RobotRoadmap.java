@@ -0,0 +1,406 @@
+package robotRRT;
+
+import java.util.*;
+import java.awt.geom.*;
+import problem.*;
+import utility.*;
+
+/**
+ * This class is a probabilistic roadmap for the robot, built once per problem.
+ * The nodes and edges are checked against the static obstacles when built,
+ * and the graph is not changed after that, so it is shared by all threads.
+ * Whether they are also clear of the boxes is checked lazily per environment
+ * and remembered, one set of states per thread, so queries run in parallel.
+ * When the boxes of a thread move, only the nodes and edges whose region
+ * overlaps a moved box, before or after the move, are checked again.
+ * A query returns the same segments as RobotSampleRRT, to be solved by robot astar.
+ */
+public class RobotRoadmap implements Utility {
+
+    /* Number of nodes. */
+    private static final int NODES = 2000;
+
+    /* Max number of edges from one node to its neighbours. */
+    private static final int NEIGHBOURS = 10;
+
+    /* Max distance of an edge, in the metric of RobotSampleRRT. */
+    private static final double RADIUS = 0.1;
+
+    /* Distance between configs checked along an edge. */
+    private static final double CHECK_STEP = 0.005;
+
+    /* Weights of x, y and orientation, the same as RobotSampleRRT. */
+    private static final double[] WEIGHTS = {1, 1, 1 / 15.71};
+
+    /* Unknown, clear and blocked states of a node or an edge. */
+    private static final byte UNKNOWN = 0;
+    private static final byte CLEAR = 1;
+    private static final byte BLOCKED = -1;
+
+    /* The robot width. */
+    private final double robotWidth;
+
+    /* The static obstacles the roadmap is built for. */
+    private final List<StaticObstacle> staticObstacles;
+
+    /* The nodes. */
+    private final List<RobotConfig> nodes;
+
+    /* Nearest neighbour index of the nodes, by node id. */
+    private final KdTree<Integer> tree;
+
+    /* The two nodes and the length of each edge. */
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final double[] edgeLength;
+
+    /* The edges of each node. */
+    private final List<List<Integer>> adjacency;
+
+    /* Grids of the regions of nodes and edges, to find the ones a box overlaps. */
+    private final SpatialGrid nodeGrid;
+    private final SpatialGrid edgeGrid;
+
+    /* The states of the nodes and edges last used by each thread. */
+    private final ThreadLocal<States> states = ThreadLocal.withInitial(States::new);
+
+    /**
+     * Constructor.
+     * @param environment - Any environment of the problem, only its static obstacles are used.
+     */
+    public RobotRoadmap(Environment environment) {
+        robotWidth = environment.movingObjects.get(0).getWidth();
+        staticObstacles = environment.staticObstacles;
+        PrimitiveEnvironment empty = new Environment(new ArrayList<>(), staticObstacles).get_primitive();
+        SplittableRandom random = new SplittableRandom();
+
+        nodes = new ArrayList<>();
+        tree = new KdTree<>(WEIGHTS);
+        for (int attempt = 0; attempt < 50 * NODES && nodes.size() < NODES; attempt++) {
+            double x = (double) Math.round(random.nextDouble() * 1000d) / 1000d;
+            double y = (double) Math.round(random.nextDouble() * 1000d) / 1000d;
+            double z = (double) Math.round(random.nextDouble() * 1.571 * 1000d) / 1000d;
+            RobotConfig rc = new RobotConfig(new Point2D.Double(x, y), z);
+            if (empty.no_collision_for_all(empty, rc, robotWidth)) {
+                tree.add(point_of(rc), nodes.size());
+                nodes.add(rc);
+            }
+        }
+
+        List<int[]> edges = new ArrayList<>();
+        adjacency = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            adjacency.add(new ArrayList<>());
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            List<Integer> near = neighbours(nodes.get(i));
+            int added = 0;
+            for (int j : near) {
+                if (added == NEIGHBOURS) {
+                    break;
+                }
+                /* Each pair once, from the smaller id. */
+                if (j <= i) {
+                    continue;
+                }
+                if (is_motion_free(nodes.get(i), nodes.get(j), empty)) {
+                    adjacency.get(i).add(edges.size());
+                    adjacency.get(j).add(edges.size());
+                    edges.add(new int[] {i, j});
+                    added++;
+                }
+            }
+        }
+        int edgeSize = edges.size();
+        edgeFrom = new int[edgeSize];
+        edgeTo = new int[edgeSize];
+        edgeLength = new double[edgeSize];
+        for (int e = 0; e < edgeSize; e++) {
+            edgeFrom[e] = edges.get(e)[0];
+            edgeTo[e] = edges.get(e)[1];
+            edgeLength[e] = distance_between(nodes.get(edgeFrom[e]), nodes.get(edgeTo[e]));
+        }
+
+        int cells = SpatialGrid.cells_for(RADIUS);
+        nodeGrid = new SpatialGrid(cells, nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            Point2D c = nodes.get(i).getPos();
+            nodeGrid.insert(i, c.getX() - robotWidth, c.getY() - robotWidth, c.getX() + robotWidth, c.getY() + robotWidth);
+        }
+        edgeGrid = new SpatialGrid(cells, edgeSize);
+        for (int e = 0; e < edgeSize; e++) {
+            Point2D a = nodes.get(edgeFrom[e]).getPos();
+            Point2D b = nodes.get(edgeTo[e]).getPos();
+            edgeGrid.insert(e, Math.min(a.getX(), b.getX()) - robotWidth, Math.min(a.getY(), b.getY()) - robotWidth,
+                    Math.max(a.getX(), b.getX()) + robotWidth, Math.max(a.getY(), b.getY()) + robotWidth);
+        }
+    }
+
+    /**
+     * Get the coordinates of a robot config for nearest neighbour search.
+     * @param rc - The robot config.
+     * @return - X, y and orientation.
+     */
+    private static double[] point_of(RobotConfig rc) {
+        return new double[] {rc.getPos().getX(), rc.getPos().getY(), rc.getOrientation()};
+    }
+
+    /**
+     * Get the distance between two robot configs, in the metric of RobotSampleRRT.
+     * @param a - Robot config a.
+     * @param b - Robot config b.
+     * @return - The distance.
+     */
+    private static double distance_between(RobotConfig a, RobotConfig b) {
+        double dx = a.getPos().getX() - b.getPos().getX();
+        double dy = a.getPos().getY() - b.getPos().getY();
+        double dz = (a.getOrientation() - b.getOrientation()) * WEIGHTS[2];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Get the nodes within the edge distance of a robot config, nearest first.
+     * @param rc - The robot config.
+     * @return - The node ids.
+     */
+    private List<Integer> neighbours(RobotConfig rc) {
+        List<Integer> result = new ArrayList<>();
+        tree.within(point_of(rc), RADIUS, result);
+        result.sort(Comparator.comparingDouble(i -> distance_between(rc, nodes.get(i))));
+        return result;
+    }
+
+    /**
+     * Check if the robot can move straight from one config to another.
+     * @param from - The start config, assumed clear.
+     * @param to - The end config.
+     * @param primitive - The environment.
+     * @return - True if no collision along the move, false otherwise.
+     */
+    private boolean is_motion_free(RobotConfig from, RobotConfig to, PrimitiveEnvironment primitive) {
+        double dx = to.getPos().getX() - from.getPos().getX();
+        double dy = to.getPos().getY() - from.getPos().getY();
+        double dz = to.getOrientation() - from.getOrientation();
+        double length = Math.max(Math.sqrt(dx * dx + dy * dy), 0.5 * robotWidth * Math.abs(dz));
+        int steps = Math.max(1, (int) Math.ceil(length / CHECK_STEP));
+        for (int i = 1; i <= steps; i++) {
+            double t = (double) i / steps;
+            RobotConfig rc = new RobotConfig(new Point2D.Double(from.getPos().getX() + t * dx,
+                    from.getPos().getY() + t * dy), from.getOrientation() + t * dz);
+            if (!primitive.no_collision_for_all(primitive, rc, robotWidth)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the nodes a config can move to straight, with the distances.
+     * @param rc - The config.
+     * @param known - The states of the nodes.
+     * @param primitive - The environment.
+     * @param toNode - True for moves from the config to the nodes, false for the reverse.
+     * @return - The distance to each node reached.
+     */
+    private Map<Integer, Double> connect(RobotConfig rc, States known, PrimitiveEnvironment primitive, boolean toNode) {
+        Map<Integer, Double> result = new HashMap<>();
+        for (int i : neighbours(rc)) {
+            if (result.size() == NEIGHBOURS) {
+                break;
+            }
+            if (known.is_node_clear(i, primitive) && (toNode ? is_motion_free(rc, nodes.get(i), primitive) :
+                    is_motion_free(nodes.get(i), rc, primitive))) {
+                result.put(i, distance_between(rc, nodes.get(i)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Solve the transition from a start robot config to a goal robot config over the roadmap.
+     * @param start - The start config.
+     * @param goal - The goal config.
+     * @param environment - The environment.
+     * @return - A list of robot config that needs to be solved by robot astar, null if not found.
+     */
+    public List<RobotConfig> solve(RobotConfig start, RobotConfig goal, Environment environment) {
+        PrimitiveEnvironment primitive = environment.get_primitive();
+        States known = states.get();
+        known.update(primitive);
+        List<RobotConfig> result = new ArrayList<>();
+        if (distance_between(start, goal) <= RADIUS && is_motion_free(start, goal, primitive)) {
+            result.add(goal);
+            return result;
+        }
+        Map<Integer, Double> fromStart = connect(start, known, primitive, true);
+        Map<Integer, Double> toGoal = connect(goal, known, primitive, false);
+        if (fromStart.isEmpty() || toGoal.isEmpty()) {
+            return null;
+        }
+
+        /* Astar over the nodes, the goal is the id after the last node. */
+        int goalId = nodes.size();
+        double[] pathCost = new double[goalId + 1];
+        int[] parents = new int[goalId + 1];
+        boolean[] closed = new boolean[goalId + 1];
+        Arrays.fill(pathCost, Double.POSITIVE_INFINITY);
+        PriorityQueue<double[]> toBeVisited = new PriorityQueue<>(Comparator.comparingDouble(a -> a[0]));
+        for (Map.Entry<Integer, Double> entry : fromStart.entrySet()) {
+            int i = entry.getKey();
+            pathCost[i] = entry.getValue();
+            parents[i] = -1;
+            toBeVisited.add(new double[] {pathCost[i] + distance_between(nodes.get(i), goal), i});
+        }
+        while (!toBeVisited.isEmpty()) {
+            int i = (int) toBeVisited.poll()[1];
+            if (closed[i]) {
+                continue;
+            }
+            closed[i] = true;
+            if (i == goalId) {
+                break;
+            }
+            Double last = toGoal.get(i);
+            if (last != null && pathCost[i] + last < pathCost[goalId]) {
+                pathCost[goalId] = pathCost[i] + last;
+                parents[goalId] = i;
+                toBeVisited.add(new double[] {pathCost[goalId], goalId});
+            }
+            for (int e : adjacency.get(i)) {
+                int j = edgeFrom[e] == i ? edgeTo[e] : edgeFrom[e];
+                double cost = pathCost[i] + edgeLength[e];
+                if (closed[j] || cost >= pathCost[j] || !known.is_node_clear(j, primitive) ||
+                        !known.is_edge_clear(e, primitive)) {
+                    continue;
+                }
+                pathCost[j] = cost;
+                parents[j] = i;
+                toBeVisited.add(new double[] {cost + distance_between(nodes.get(j), goal), j});
+            }
+        }
+        if (!closed[goalId]) {
+            return null;
+        }
+
+        Stack<RobotConfig> actions = new Stack<>();
+        for (int i = parents[goalId]; i >= 0; i = parents[i]) {
+            actions.push(nodes.get(i));
+        }
+        while (!actions.isEmpty()) {
+            result.add(actions.pop());
+        }
+        result.add(goal);
+        return result;
+    }
+
+    /**
+     * This class is the states of the nodes and edges against the boxes of
+     * one environment, kept by one thread and moved along with its queries.
+     */
+    private class States {
+
+        /* State of each node and edge against the boxes of the environment. */
+        private final byte[] nodeStates = new byte[nodes.size()];
+        private final byte[] edgeStates = new byte[edgeLength.length];
+
+        /* The environment of the states. */
+        private PrimitiveEnvironment primitive;
+
+        /* Position and width of each box of the environment. */
+        private double[] xs;
+        private double[] ys;
+        private double[] widths;
+
+        /**
+         * Forget the states of the nodes and edges a box region overlaps.
+         * @param x - X of the box.
+         * @param y - Y of the box.
+         * @param w - Width of the box.
+         */
+        private void forget(double x, double y, double w) {
+            double minX = x - MAX_ERROR;
+            double minY = y - MAX_ERROR;
+            double maxX = x + w + MAX_ERROR;
+            double maxY = y + w + MAX_ERROR;
+            forget(nodeGrid, nodeStates, minX, minY, maxX, maxY);
+            forget(edgeGrid, edgeStates, minX, minY, maxX, maxY);
+        }
+
+        /**
+         * Forget the states of the items of a grid in a rectangle.
+         * @param grid - The grid.
+         * @param states - The states of the items.
+         * @param minX - Min x of the rectangle.
+         * @param minY - Min y of the rectangle.
+         * @param maxX - Max x of the rectangle.
+         * @param maxY - Max y of the rectangle.
+         */
+        private void forget(SpatialGrid grid, byte[] states, double minX, double minY, double maxX, double maxY) {
+            int cx1 = grid.cell_of(maxX);
+            int cy1 = grid.cell_of(maxY);
+            for (int cy = grid.cell_of(minY); cy <= cy1; cy++) {
+                for (int cx = grid.cell_of(minX); cx <= cx1; cx++) {
+                    int[] items = grid.items(cx, cy);
+                    int count = grid.count(cx, cy);
+                    for (int k = 0; k < count; k++) {
+                        states[items[k]] = UNKNOWN;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Update the states to the given environment, forgetting only around the moved boxes.
+         * @param primitive - The environment.
+         */
+        private void update(PrimitiveEnvironment primitive) {
+            if (this.primitive == primitive) {
+                return;
+            }
+            this.primitive = primitive;
+            if (xs == null || xs.length != primitive.size) {
+                Arrays.fill(nodeStates, UNKNOWN);
+                Arrays.fill(edgeStates, UNKNOWN);
+                xs = primitive.xs.clone();
+                ys = primitive.ys.clone();
+                widths = primitive.widths.clone();
+                return;
+            }
+            for (int i = 0; i < xs.length; i++) {
+                if (xs[i] != primitive.xs[i] || ys[i] != primitive.ys[i] || widths[i] != primitive.widths[i]) {
+                    forget(xs[i], ys[i], widths[i]);
+                    forget(primitive.xs[i], primitive.ys[i], primitive.widths[i]);
+                    xs[i] = primitive.xs[i];
+                    ys[i] = primitive.ys[i];
+                    widths[i] = primitive.widths[i];
+                }
+            }
+        }
+
+        /**
+         * Check if a node is clear in the environment.
+         * @param i - The node.
+         * @param primitive - The environment.
+         * @return - True if clear, false otherwise.
+         */
+        private boolean is_node_clear(int i, PrimitiveEnvironment primitive) {
+            if (nodeStates[i] == UNKNOWN) {
+                nodeStates[i] = primitive.no_collision_for_all(primitive, nodes.get(i), robotWidth) ? CLEAR : BLOCKED;
+            }
+            return nodeStates[i] == CLEAR;
+        }
+
+        /**
+         * Check if an edge is clear in the environment.
+         * @param e - The edge.
+         * @param primitive - The environment.
+         * @return - True if clear, false otherwise.
+         */
+        private boolean is_edge_clear(int e, PrimitiveEnvironment primitive) {
+            if (edgeStates[e] == UNKNOWN) {
+                edgeStates[e] = is_motion_free(nodes.get(edgeFrom[e]), nodes.get(edgeTo[e]), primitive) ? CLEAR : BLOCKED;
+            }
+            return edgeStates[e] == CLEAR;
+        }
+    }
+}
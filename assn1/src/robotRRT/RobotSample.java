@@ -11,6 +11,9 @@ public class RobotSample implements Utility {
     /* The state of this sample. */
     public RobotConfig state;
 
+    /* The canonical key of this sample, built on first use. */
+    private StateKey key;
+
     /* The parent of this sample. */
     public RobotSample parent;
 
@@ -23,17 +26,33 @@ public class RobotSample implements Utility {
         parent = null;
     }
 
+    /**
+     * Get the coordinates of this sample for nearest neighbour search.
+     * @return - X, y and orientation.
+     */
+    public double[] point() {
+        return new double[] {state.getPos().getX(), state.getPos().getY(), state.getOrientation()};
+    }
+
+    /**
+     * Get the canonical key of this sample, samples are on the unit step grid.
+     * The state must not change once the key is built.
+     * @return - The key.
+     */
+    public StateKey key() {
+        if (key == null) {
+            key = new StateKey(state);
+        }
+        return key;
+    }
+
     /**
      * Get the hash code of this sample.
      * @return - The hash code of this sample.
      */
     @Override
     public int hashCode() {
-        int result = 0;
-        result += state.getPos().getX() * 1010;
-        result += state.getPos().getY() * 1020;
-        result += state.getOrientation() * 1030;
-        return result;
+        return key().hashCode();
     }
 
     /**
@@ -45,7 +64,7 @@ public class RobotSample implements Utility {
     public boolean equals(Object o) {
         if (o instanceof RobotSample) {
             RobotSample rs = (RobotSample) o;
-            return is_two_robots_equal(state, rs.state);
+            return key().equals(rs.key());
         }
         return false;
     }
@@ -1,6 +1,8 @@
 package robotRRT;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.awt.geom.*;
 import problem.*;
 import utility.*;
@@ -11,6 +13,9 @@ import robotAstar.*;
  */
 public class RobotSampleRRT implements Utility {
 
+    /* Weights of x, y and orientation, the same as distance2_between. */
+    private static final double[] WEIGHTS = {1, 1, 1 / 15.71};
+
     /* The sample step for RRT. */
     private double robotSampleStep;
 
@@ -18,7 +23,16 @@ public class RobotSampleRRT implements Utility {
     private double robotSampleStepSquare;
 
     /* Random number generator. */
-    private Random random;
+    private SplittableRandom random;
+
+    /* Set when another tree grown in parallel has solved the problem. */
+    private AtomicBoolean stopped;
+
+    /* Sampler of x, y and orientation over 1.571. */
+    private Sampler sampler;
+
+    /* The solves give up when it expires. */
+    private Deadline deadline;
 
     /* Start config. */
     private RobotSample start;
@@ -44,21 +58,73 @@ public class RobotSampleRRT implements Utility {
         this.goal = new RobotSample(goal);
         this.environment = environment;
         robotWidth = environment.movingObjects.get(0).getWidth();
-        random = new Random();
+        random = new SplittableRandom();
+        stopped = new AtomicBoolean();
+        deadline = Deadline.NONE;
+        sampler = new Sampler(SampleStrategy.UNIFORM, 3, random);
         robotSampleStep = step;
         robotSampleStepSquare = step * step;
     }
 
+    /**
+     * Constructor of a tree grown in parallel, solving the same problem as the given planner.
+     * @param other - The given planner.
+     * @param random - Random number generator of this tree.
+     * @param stopped - Set when any tree has solved the problem.
+     */
+    private RobotSampleRRT(RobotSampleRRT other, SplittableRandom random, AtomicBoolean stopped) {
+        start = new RobotSample(other.start.state);
+        goal = new RobotSample(other.goal.state);
+        environment = other.environment;
+        robotWidth = other.robotWidth;
+        robotSampleStep = other.robotSampleStep;
+        robotSampleStepSquare = other.robotSampleStepSquare;
+        this.random = random;
+        this.stopped = stopped;
+        sampler = other.sampler.split(random);
+        deadline = other.deadline;
+    }
+
+    /**
+     * Set the deadline of the following solves, they return null when it expires.
+     * @param deadline - The deadline.
+     */
+    public void set_deadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Set the sample strategy used by the following solves.
+     * @param strategy - The sample strategy.
+     */
+    public void set_sample_strategy(SampleStrategy strategy) {
+        sampler = new Sampler(strategy, 3, random);
+    }
+
     /**
      * Get a random sample from c-space.
      * @return A robot sample.
      */
     private RobotSample get_random_sample() {
+        RobotConfig rc = goal.state;
+        double[] target = {rc.getPos().getX(), rc.getPos().getY(), rc.getOrientation() / 1.571};
+        PrimitiveEnvironment primitive = environment.get_primitive();
+        double[] point = sampler.next(target,
+                p -> primitive.no_collision_for_all(primitive, config_of(p), robotWidth));
+        return new RobotSample(config_of(point));
+    }
+
+    /**
+     * Get the robot config of a point in the unit cube, rounded as the samples.
+     * @param point - The point, x, y and orientation over 1.571.
+     * @return - The robot config.
+     */
+    private static RobotConfig config_of(double[] point) {
         double x, y, z;
-        x = (double)Math.round(random.nextDouble() * 1000d) / 1000d;
-        y = (double)Math.round(random.nextDouble() * 1000d) / 1000d;
-        z = (double)Math.round(random.nextDouble() * 1.571 * 1000d) / 1000d;
-        return new RobotSample(new RobotConfig(new Point2D.Double(x, y), z));
+        x = (double)Math.round(point[0] * 1000d) / 1000d;
+        y = (double)Math.round(point[1] * 1000d) / 1000d;
+        z = (double)Math.round(point[2] * 1.571 * 1000d) / 1000d;
+        return new RobotConfig(new Point2D.Double(x, y), z);
     }
 
     /**
@@ -77,28 +143,12 @@ public class RobotSampleRRT implements Utility {
 
     /**
      * Get the closest sample to the child in this graph.
-     * @param graph - The graph.
+     * @param tree - The nearest neighbour index of the graph.
      * @param child - The child sample.
      * @return - The closest sample.
      */
-    private RobotSample get_closest(List<RobotSample> graph, RobotSample child) {
-
-        double distance = 0;
-        double temp;
-        RobotSample result = null;
-        for (RobotSample rs : graph) {
-            if (result == null) {
-                distance = distance2_between(child, rs);
-                result = rs;
-            } else {
-                temp = distance2_between(child, rs);
-                if (temp < distance) {
-                    distance = temp;
-                    result = rs;
-                }
-            }
-        }
-        return result;
+    private RobotSample get_closest(KdTree<RobotSample> tree, RobotSample child) {
+        return tree.nearest(child.point());
     }
 
     /**
@@ -168,6 +218,50 @@ public class RobotSampleRRT implements Utility {
         return true;
     }
 
+    /**
+     * Check if the robot can move straight from one config to another,
+     * at the same resolution as can_connect.
+     * @param from - Config-from.
+     * @param to - Config-to.
+     * @return - true if can move, false otherwise.
+     */
+    private boolean can_shortcut(RobotConfig from, RobotConfig to) {
+        double distance = Math.sqrt(distance2_between(new RobotSample(from), new RobotSample(to)));
+        int count = (int) Math.ceil(distance / (robotSampleStep / 10));
+
+        double x1 = from.getPos().getX();
+        double y1 = from.getPos().getY();
+        double z1 = from.getOrientation();
+        double x2 = to.getPos().getX();
+        double y2 = to.getPos().getY();
+        double z2 = to.getOrientation();
+
+        for (int i = 1; i < count; i++) {
+            double t = (double) i / count;
+            double x3 = Math.round((x1 + t * (x2 - x1)) * 1000d) / 1000d;
+            double y3 = Math.round((y1 + t * (y2 - y1)) * 1000d) / 1000d;
+            double z3 = Math.round((z1 + t * (z2 - z1)) * 1000d) / 1000d;
+            if (!noCollisionForAll(environment, environment, new RobotConfig(new Point2D.Double(x3, y3), z3), robotWidth)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Shortcut the route from start, so robot astar solves fewer and shorter segments.
+     * @param route - The route, without start.
+     * @return - The shortcut route, without start.
+     */
+    private List<RobotConfig> shortcut(List<RobotConfig> route) {
+        List<RobotConfig> path = new ArrayList<>();
+        path.add(start.state);
+        path.addAll(route);
+        List<RobotConfig> result = shortcut_path(path, this::can_shortcut);
+        result.remove(0);
+        return result;
+    }
+
     /**
      * Construct list of robot config that needs to be solved by robot astar.
      * @return - A list of robot config that needs to be solved by robot astar.
@@ -184,7 +278,132 @@ public class RobotSampleRRT implements Utility {
         for (int i = 0; i < size; i++) {
             result.add(actions.pop());
         }
-        return result;
+        return shortcut(result);
+    }
+
+    /**
+     * Grow a tree by one sample towards the target.
+     * @param tree - The nearest neighbour index of the tree.
+     * @param samples - The samples in the tree.
+     * @param graph - The tree.
+     * @param target - The target sample.
+     * @return - The new sample, the sample at the target if the tree has it already, null if the tree can't grow.
+     */
+    private RobotSample grow(KdTree<RobotSample> tree, Set<RobotSample> samples, List<RobotSample> graph, RobotSample target) {
+        RobotSample closest = get_closest(tree, target);
+        RobotSample next;
+        if (distance2_between(closest, target) > robotSampleStepSquare) {
+            next = extend(closest, target);
+            if (next == null) {
+                return null;
+            }
+        } else {
+            /* A copy, so the target keeps its parent in the other tree. */
+            next = new RobotSample(target.state);
+            if (samples.contains(next)) {
+                /* The tree already has the target, the nearest sample is that one, and the trees meet there. */
+                return closest.equals(next) ? closest : null;
+            }
+        }
+        if (samples.contains(next) || !can_connect(closest, next)) {
+            return null;
+        }
+        next.parent = closest;
+        graph.add(next);
+        tree.add(next.point(), next);
+        samples.add(next);
+        return next;
+    }
+
+    /**
+     * Construct list of robot config through the meeting point of two trees.
+     * @param fromStart - The meeting sample in the tree from start.
+     * @param fromGoal - The meeting sample in the tree from goal.
+     * @return - A list of robot config that needs to be solved by robot astar.
+     */
+    private List<RobotConfig> construct_robot_route(RobotSample fromStart, RobotSample fromGoal) {
+        Stack<RobotConfig> actions = new Stack<>();
+        List<RobotConfig> result = new ArrayList<>();
+        RobotSample rs = fromStart;
+        while (rs.parent != null) {
+            actions.push(rs.state);
+            rs = rs.parent;
+        }
+        int size = actions.size();
+        for (int i = 0; i < size; i++) {
+            result.add(actions.pop());
+        }
+        /* The meeting sample is already added from the start side. */
+        rs = fromGoal.parent;
+        while (rs != null) {
+            result.add(rs.state);
+            rs = rs.parent;
+        }
+        return shortcut(result);
+    }
+
+    /**
+     * Solve the RRT problem by RRT connect, growing trees from both the start
+     * and the goal, and greedily trying to connect them after each extension.
+     * @param maxGraphSize - The max graph size RRT can explore.
+     * @return - A list of robot config that needs to be solved by robot astar.
+     */
+    public List<RobotConfig> solve_connect(int maxGraphSize) {
+        List<RobotSample> startGraph = new ArrayList<>();
+        KdTree<RobotSample> startTree = new KdTree<>(WEIGHTS);
+        Set<RobotSample> startSamples = new HashSet<>();
+        List<RobotSample> goalGraph = new ArrayList<>();
+        KdTree<RobotSample> goalTree = new KdTree<>(WEIGHTS);
+        Set<RobotSample> goalSamples = new HashSet<>();
+        start.parent = null;
+        goal.parent = null;
+        startGraph.add(start);
+        startTree.add(start.point(), start);
+        startSamples.add(start);
+        goalGraph.add(goal);
+        goalTree.add(goal.point(), goal);
+        goalSamples.add(goal);
+
+        if (distance2_between(start, goal) < robotSampleStepSquare &&
+                RobotNodeAstar.solve_quick(start.state, goal.state, environment)) {
+            List<RobotConfig> result = new ArrayList<>();
+            result.add(goal.state);
+            return result;
+        }
+
+        /* True if the tree from start grows first in this round. */
+        boolean startFirst = true;
+        int count = 0;
+        while (true) {
+            if (stopped.get() || deadline.expired()) {
+                return null;
+            }
+            if (count++ > maxGraphSize) {
+                System.out.println("RRT exceed max computation time, exit.");
+                return null;
+            }
+            KdTree<RobotSample> tree = startFirst ? startTree : goalTree;
+            Set<RobotSample> samples = startFirst ? startSamples : goalSamples;
+            List<RobotSample> graph = startFirst ? startGraph : goalGraph;
+            KdTree<RobotSample> otherTree = startFirst ? goalTree : startTree;
+            Set<RobotSample> otherSamples = startFirst ? goalSamples : startSamples;
+            List<RobotSample> otherGraph = startFirst ? goalGraph : startGraph;
+            startFirst = !startFirst;
+
+            RobotSample added = grow(tree, samples, graph, get_random_sample());
+            if (added == null) {
+                continue;
+            }
+            /* Connect the other tree to the new sample, as far as it goes. */
+            RobotSample reached = grow(otherTree, otherSamples, otherGraph, added);
+            while (reached != null && distance2_between(reached, added) > MAX_ERROR * MAX_ERROR) {
+                reached = grow(otherTree, otherSamples, otherGraph, added);
+            }
+            if (reached != null) {
+                System.out.printf("RRT solved with %d samples.\n", startGraph.size() + goalGraph.size());
+                return tree == startTree ? construct_robot_route(added, reached) : construct_robot_route(reached, added);
+            }
+        }
     }
 
     /**
@@ -194,7 +413,11 @@ public class RobotSampleRRT implements Utility {
      */
     public List<RobotConfig> solve(int maxGraphSize) {
         List<RobotSample> graph = new ArrayList<>();
+        KdTree<RobotSample> tree = new KdTree<>(WEIGHTS);
+        Set<RobotSample> samples = new HashSet<>();
         graph.add(start);
+        tree.add(start.point(), start);
+        samples.add(start);
         boolean notReachGoal = true;
         if (distance2_between(start, goal) < robotSampleStepSquare) {
             goal.parent = start;
@@ -202,14 +425,16 @@ public class RobotSampleRRT implements Utility {
         }
         int count = 0;
         while (notReachGoal) {
+            if (stopped.get() || deadline.expired()) {
+                return null;
+            }
             if (count++ > maxGraphSize) {
                 System.out.println("RRT exceed max computation time, exit.");
-                print_data(graph);
                 return null;
             }
             RobotSample thisSample = get_random_sample();
-            if (!graph.contains(thisSample)) {
-                RobotSample closest = get_closest(graph, thisSample);
+            if (!samples.contains(thisSample)) {
+                RobotSample closest = get_closest(tree, thisSample);
 
                 if (distance2_between(closest, thisSample) > robotSampleStepSquare) {
                     RobotSample temp = extend(closest, thisSample);
@@ -219,6 +444,8 @@ public class RobotSampleRRT implements Utility {
                 if (can_connect(closest, thisSample)) {
                     thisSample.parent = closest;
                     graph.add(thisSample);
+                    tree.add(thisSample.point(), thisSample);
+                    samples.add(thisSample);
                     if (distance2_between(thisSample, goal) < robotSampleStepSquare &&
                             RobotNodeAstar.solve_quick(thisSample.state, goal.state, environment)) {
                         goal.parent = thisSample;
@@ -230,4 +457,36 @@ public class RobotSampleRRT implements Utility {
         System.out.printf("RRT solved with %d samples.\n", graph.size());
         return construct_robot_route();
     }
+
+    /**
+     * Solve the RRT problem by growing several RRT connect trees in parallel
+     * on TreePool, each with its own random numbers. The trees queue there
+     * with the trees of the box planner and of the other legs.
+     * The first solution found is returned and the other trees are stopped.
+     * @param maxGraphSize - The max graph size each tree can explore.
+     * @param trees - The number of trees.
+     * @return - A list of robot config that needs to be solved by robot astar.
+     */
+    public List<RobotConfig> solve_parallel(int maxGraphSize, int trees) {
+        AtomicBoolean solved = new AtomicBoolean();
+        CompletionService<List<RobotConfig>> service = new ExecutorCompletionService<>(TreePool.POOL);
+        for (int i = 0; i < trees; i++) {
+            RobotSampleRRT tree = new RobotSampleRRT(this, random.split(), solved);
+            service.submit(() -> tree.solve_connect(maxGraphSize));
+        }
+        List<RobotConfig> result = null;
+        try {
+            for (int i = 0; i < trees; i++) {
+                List<RobotConfig> route = service.take().get();
+                if (result == null && route != null) {
+                    result = route;
+                    solved.set(true);
+                }
+            }
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            solved.set(true);
+        }
+        return result;
+    }
 }
\ No newline at end of file
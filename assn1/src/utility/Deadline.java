@@ -0,0 +1,73 @@
+package utility;
+
+/**
+ * This class is a wall clock deadline shared by the planners.
+ * A planner checks if its deadline has expired in its main loop, and then
+ * returns the best it has found so far. Deadlines of the phases are cut
+ * from the deadline of the whole problem, so they never end after it.
+ */
+public class Deadline {
+
+    /* A deadline that never expires. */
+    public static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+    /* The end time in milliseconds, Long.MAX_VALUE if it never expires. */
+    private final long end;
+
+    /**
+     * Constructor.
+     * @param end - The end time in milliseconds.
+     */
+    private Deadline(long end) {
+        this.end = end;
+    }
+
+    /**
+     * Get a deadline the given time from now.
+     * @param budget - The time from now in milliseconds.
+     * @return - The deadline.
+     */
+    public static Deadline after(long budget) {
+        return new Deadline(System.currentTimeMillis() + budget);
+    }
+
+    /**
+     * Check if the deadline has expired.
+     * @return - True if expired, false otherwise.
+     */
+    public boolean expired() {
+        return end != Long.MAX_VALUE && System.currentTimeMillis() >= end;
+    }
+
+    /**
+     * Get the time left.
+     * @return - The time left in milliseconds, Long.MAX_VALUE if it never expires.
+     */
+    public long remaining() {
+        if (end == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, end - System.currentTimeMillis());
+    }
+
+    /**
+     * Get a deadline a share of the time left from now.
+     * @param fraction - The share, between 0 and 1.
+     * @return - The deadline, NONE if this one never expires.
+     */
+    public Deadline share(double fraction) {
+        if (end == Long.MAX_VALUE) {
+            return NONE;
+        }
+        return after((long) (fraction * remaining()));
+    }
+
+    /**
+     * Get a deadline at most the given time from now, and not after this one.
+     * @param budget - The time from now in milliseconds.
+     * @return - The deadline.
+     */
+    public Deadline within(long budget) {
+        return new Deadline(Math.min(end, System.currentTimeMillis() + budget));
+    }
+}
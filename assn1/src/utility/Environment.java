@@ -1,10 +1,15 @@
 package utility;
 
 import java.util.*;
+import java.awt.geom.*;
 import problem.*;
 
 /**
  * This class represents a state of environment.
+ * An environment is not modified after construction, so child environments
+ * share the boxes of their parent and only replace the moved one.
+ * The caches built on first use are safely published, so an environment
+ * can be read by several planner threads at once.
  */
 public class Environment {
 
@@ -14,6 +19,9 @@ public class Environment {
     /* All static obstacles in this environment. */
     public List<StaticObstacle> staticObstacles;
 
+    /* The primitive representation of this environment, built when first used. */
+    private volatile PrimitiveEnvironment primitive;
+
     /**
      * Constructor.
      * @param movingObjects - All moving objects in this environment.
@@ -30,4 +38,42 @@ public class Environment {
         }
         this.staticObstacles = staticObstacles;
     }
+
+    /**
+     * Constructor for an environment that differs from its parent by one box.
+     * @param parent - The parent environment.
+     * @param index - The index of the moved box.
+     * @param newPos - The new position of the moved box.
+     */
+    public Environment(Environment parent, int index, Point2D newPos) {
+        this.movingObjects = new ArrayList<>(parent.movingObjects);
+        Box box = parent.movingObjects.get(index);
+        if (box instanceof MovingBox) {
+            this.movingObjects.set(index, new MovingBox(newPos, box.getWidth()));
+        } else {
+            this.movingObjects.set(index, new MovingObstacle(newPos, box.getWidth()));
+        }
+        this.staticObstacles = parent.staticObstacles;
+        if (parent.primitive != null) {
+            this.primitive = new PrimitiveEnvironment(parent.primitive, index, newPos.getX(), newPos.getY());
+        }
+    }
+
+    /**
+     * Get the primitive representation of this environment.
+     * @return - The primitive environment.
+     */
+    public PrimitiveEnvironment get_primitive() {
+        PrimitiveEnvironment result = primitive;
+        if (result == null) {
+            synchronized (this) {
+                result = primitive;
+                if (result == null) {
+                    result = new PrimitiveEnvironment(this);
+                    primitive = result;
+                }
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,209 @@
+package utility;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * This class is an incremental k-d tree for nearest neighbour queries.
+ * Each dimension has a weight, and the distance is the sum of the squared
+ * weighted differences, so it matches the weighted metrics of the samplers.
+ * Points are added in sampling order, which is random enough to keep the
+ * tree balanced in expectation without rebuilding.
+ * @param <T> - The item type.
+ */
+public class KdTree<T> {
+
+    /* Number of dimensions. */
+    private final int dimensions;
+
+    /* Weight of each dimension. */
+    private final double[] weights;
+
+    /* Weighted coordinates of each node, dimensions per node. */
+    private double[] points;
+
+    /* Left and right child of each node, -1 for none. */
+    private int[] lefts;
+    private int[] rights;
+
+    /* Item of each node. */
+    private List<T> items;
+
+    /**
+     * Constructor.
+     * @param weights - Weight of each dimension.
+     */
+    public KdTree(double[] weights) {
+        dimensions = weights.length;
+        this.weights = weights.clone();
+        points = new double[16 * dimensions];
+        lefts = new int[16];
+        rights = new int[16];
+        items = new ArrayList<>();
+    }
+
+    /**
+     * Get the number of items.
+     * @return - The number of items.
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Add an item.
+     * @param point - The coordinates of the item.
+     * @param item - The item.
+     */
+    public void add(double[] point, T item) {
+        int node = items.size();
+        if (node == lefts.length) {
+            points = Arrays.copyOf(points, 2 * points.length);
+            lefts = Arrays.copyOf(lefts, 2 * lefts.length);
+            rights = Arrays.copyOf(rights, 2 * rights.length);
+        }
+        for (int d = 0; d < dimensions; d++) {
+            points[node * dimensions + d] = point[d] * weights[d];
+        }
+        lefts[node] = -1;
+        rights[node] = -1;
+        items.add(item);
+        if (node == 0) {
+            return;
+        }
+
+        int parent = 0;
+        int depth = 0;
+        while (true) {
+            int d = depth % dimensions;
+            if (points[node * dimensions + d] < points[parent * dimensions + d]) {
+                if (lefts[parent] < 0) {
+                    lefts[parent] = node;
+                    return;
+                }
+                parent = lefts[parent];
+            } else {
+                if (rights[parent] < 0) {
+                    rights[parent] = node;
+                    return;
+                }
+                parent = rights[parent];
+            }
+            depth++;
+        }
+    }
+
+    /**
+     * Get the item nearest to the given point.
+     * @param point - The given point.
+     * @return - The nearest item, null if the tree is empty.
+     */
+    public T nearest(double[] point) {
+        return nearest(point, null);
+    }
+
+    /**
+     * Get the accepted item nearest to the given point.
+     * Items not accepted are skipped, but still guide the search.
+     * @param point - The given point.
+     * @param accept - Returns true for the items that may be returned, null to accept all.
+     * @return - The nearest accepted item, null if there is none.
+     */
+    public T nearest(double[] point, Predicate<T> accept) {
+        if (items.isEmpty()) {
+            return null;
+        }
+        double[] query = new double[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            query[d] = point[d] * weights[d];
+        }
+        /* The best node and its distance square. */
+        int[] best = {-1};
+        double[] bestDistance = {Double.POSITIVE_INFINITY};
+        search(0, 0, query, accept, best, bestDistance);
+        return best[0] < 0 ? null : items.get(best[0]);
+    }
+
+    /**
+     * Get all items within a distance of the given point.
+     * @param point - The given point.
+     * @param radius - The distance.
+     * @param result - The items found are appended to it.
+     */
+    public void within(double[] point, double radius, List<T> result) {
+        if (items.isEmpty()) {
+            return;
+        }
+        double[] query = new double[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            query[d] = point[d] * weights[d];
+        }
+        search_within(0, 0, query, radius * radius, result);
+    }
+
+    /**
+     * Search a subtree for all nodes within a distance.
+     * @param node - The root of the subtree.
+     * @param depth - The depth of the root.
+     * @param query - The weighted query point.
+     * @param radius2 - The distance square.
+     * @param result - The items found are appended to it.
+     */
+    private void search_within(int node, int depth, double[] query, double radius2, List<T> result) {
+        if (node < 0) {
+            return;
+        }
+        if (distance2(node, query) <= radius2) {
+            result.add(items.get(node));
+        }
+        int d = depth % dimensions;
+        double diff = query[d] - points[node * dimensions + d];
+        search_within(diff < 0 ? lefts[node] : rights[node], depth + 1, query, radius2, result);
+        if (diff * diff <= radius2) {
+            search_within(diff < 0 ? rights[node] : lefts[node], depth + 1, query, radius2, result);
+        }
+    }
+
+    /**
+     * Search a subtree for the nearest node.
+     * @param node - The root of the subtree.
+     * @param depth - The depth of the root.
+     * @param query - The weighted query point.
+     * @param accept - Returns true for the items that may be returned, null to accept all.
+     * @param best - The best node so far.
+     * @param bestDistance - The distance square of the best node so far.
+     */
+    private void search(int node, int depth, double[] query, Predicate<T> accept, int[] best, double[] bestDistance) {
+        if (node < 0) {
+            return;
+        }
+        double distance = distance2(node, query);
+        if (distance < bestDistance[0] && (accept == null || accept.test(items.get(node)))) {
+            bestDistance[0] = distance;
+            best[0] = node;
+        }
+        int d = depth % dimensions;
+        double diff = query[d] - points[node * dimensions + d];
+        int near = diff < 0 ? lefts[node] : rights[node];
+        int far = diff < 0 ? rights[node] : lefts[node];
+        search(near, depth + 1, query, accept, best, bestDistance);
+        if (diff * diff < bestDistance[0]) {
+            search(far, depth + 1, query, accept, best, bestDistance);
+        }
+    }
+
+    /**
+     * Get the distance square from a node to the weighted query point.
+     * @param node - The node.
+     * @param query - The weighted query point.
+     * @return - The distance square.
+     */
+    private double distance2(int node, double[] query) {
+        double result = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double diff = points[node * dimensions + d] - query[d];
+            result += diff * diff;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,148 @@
+package utility;
+
+import java.util.*;
+import problem.*;
+
+/**
+ * This class is a set of robot configs on the unit step lattice.
+ * The lattice is cut into chunks of 4 x 4 x 4 points in x, y and angle,
+ * each chunk is one long of bits, and the chunks are kept in an open
+ * addressing table. A test or an insertion is one probe with no allocation,
+ * and configs close to each other share a chunk, so the set stays small even
+ * for a search over the whole workspace.
+ */
+public class LatticeSet {
+
+    /* Bits of one chunk coordinate in a chunk key. */
+    private static final int BITS = 21;
+
+    /* Mask of one chunk coordinate. */
+    private static final long MASK = (1L << BITS) - 1;
+
+    /* Key of an empty slot, the top bit of a chunk key is never set. */
+    private static final long EMPTY = -1;
+
+    /* The chunk key in each slot. */
+    private long[] keys;
+
+    /* The bits of the chunk in each slot. */
+    private long[] chunks;
+
+    /* Number of chunks. */
+    private int chunkCount;
+
+    /* Number of configs. */
+    private int size;
+
+    /**
+     * Constructor of an empty set.
+     */
+    public LatticeSet() {
+        keys = new long[64];
+        chunks = new long[64];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Get the number of configs.
+     * @return - The number of configs.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check if the set has the lattice point of a robot config.
+     * @param rc - The robot config.
+     * @return - True if it has, false otherwise.
+     */
+    public boolean contains(RobotConfig rc) {
+        int x = StateKey.quantise(rc.getPos().getX());
+        int y = StateKey.quantise(rc.getPos().getY());
+        int angle = StateKey.quantise(rc.getOrientation());
+        int slot = find(chunk_key(x, y, angle));
+        return keys[slot] != EMPTY && (chunks[slot] & bit(x, y, angle)) != 0;
+    }
+
+    /**
+     * Add the lattice point of a robot config.
+     * @param rc - The robot config.
+     * @return - True if it was not in the set, false otherwise.
+     */
+    public boolean add(RobotConfig rc) {
+        int x = StateKey.quantise(rc.getPos().getX());
+        int y = StateKey.quantise(rc.getPos().getY());
+        int angle = StateKey.quantise(rc.getOrientation());
+        long key = chunk_key(x, y, angle);
+        int slot = find(key);
+        if (keys[slot] == EMPTY) {
+            if (2 * (chunkCount + 1) > keys.length) {
+                grow();
+                slot = find(key);
+            }
+            keys[slot] = key;
+            chunkCount++;
+        }
+        long bit = bit(x, y, angle);
+        if ((chunks[slot] & bit) != 0) {
+            return false;
+        }
+        chunks[slot] |= bit;
+        size++;
+        return true;
+    }
+
+    /**
+     * Get the key of the chunk of a lattice point.
+     * @param x - X in unit steps.
+     * @param y - Y in unit steps.
+     * @param angle - Angle in unit steps.
+     * @return - The chunk key.
+     */
+    private static long chunk_key(int x, int y, int angle) {
+        return ((x >> 2) & MASK) << (2 * BITS) | ((y >> 2) & MASK) << BITS | ((angle >> 2) & MASK);
+    }
+
+    /**
+     * Get the bit of a lattice point in its chunk.
+     * @param x - X in unit steps.
+     * @param y - Y in unit steps.
+     * @param angle - Angle in unit steps.
+     * @return - The bit.
+     */
+    private static long bit(int x, int y, int angle) {
+        return 1L << ((x & 3) | (y & 3) << 2 | (angle & 3) << 4);
+    }
+
+    /**
+     * Find the slot of a chunk key, or the empty slot where it would go.
+     * @param key - The chunk key.
+     * @return - The slot.
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Double the table and put the chunks back.
+     */
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldChunks = chunks;
+        keys = new long[2 * oldKeys.length];
+        chunks = new long[2 * oldKeys.length];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                chunks[slot] = oldChunks[i];
+            }
+        }
+    }
+}
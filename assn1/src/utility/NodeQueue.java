@@ -0,0 +1,146 @@
+package utility;
+
+import java.util.*;
+
+/**
+ * This class represents the open set of an astar search.
+ * It is a binary heap indexed by a hash map, so membership test, lookup
+ * and decrease key take constant or logarithmic time instead of the
+ * linear scan of PriorityQueue.contains.
+ * @param <T> - The node type, must implement hashCode and equals consistently.
+ */
+public class NodeQueue<T> {
+
+    /* The heap of nodes. */
+    private List<T> heap;
+
+    /* The position of each node in the heap. */
+    private Map<T, Integer> index;
+
+    /* Used for comparing two nodes. */
+    private Comparator<T> comparator;
+
+    /**
+     * Constructor.
+     * @param comparator - Used for comparing two nodes.
+     */
+    public NodeQueue(Comparator<T> comparator) {
+        this.comparator = comparator;
+        heap = new ArrayList<>();
+        index = new HashMap<>();
+    }
+
+    /**
+     * Get the number of nodes in this queue.
+     * @return - The number of nodes.
+     */
+    public int size() {
+        return heap.size();
+    }
+
+    /**
+     * Check if a node equal to the given node is in this queue.
+     * @param node - The given node.
+     * @return - True if it is, false otherwise.
+     */
+    public boolean contains(T node) {
+        return index.containsKey(node);
+    }
+
+    /**
+     * Get the node stored in this queue that equals to the given node.
+     * @param node - The given node.
+     * @return - The stored node, null if not in this queue.
+     */
+    public T get(T node) {
+        Integer i = index.get(node);
+        if (i == null) {
+            return null;
+        }
+        return heap.get(i);
+    }
+
+    /**
+     * Add a node to this queue.
+     * @param node - The node to be added.
+     */
+    public void add(T node) {
+        heap.add(node);
+        index.put(node, heap.size() - 1);
+        sift_up(heap.size() - 1);
+    }
+
+    /**
+     * Remove the smallest node from this queue.
+     * @return - The smallest node.
+     */
+    public T remove() {
+        T result = heap.get(0);
+        T last = heap.remove(heap.size() - 1);
+        index.remove(result);
+        if (!heap.isEmpty()) {
+            heap.set(0, last);
+            index.put(last, 0);
+            sift_down(0);
+        }
+        return result;
+    }
+
+    /**
+     * Replace the stored node equal to the given node, the given node must
+     * not be greater than the stored one.
+     * @param node - The node with decreased key.
+     */
+    public void decrease_key(T node) {
+        int i = index.get(node);
+        /* Remove first so the key object in the index is the new node. */
+        index.remove(node);
+        heap.set(i, node);
+        index.put(node, i);
+        sift_up(i);
+    }
+
+    /**
+     * Move the node at the given position up until the heap is valid.
+     * @param i - The position.
+     */
+    private void sift_up(int i) {
+        T node = heap.get(i);
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            T p = heap.get(parent);
+            if (comparator.compare(node, p) >= 0) {
+                break;
+            }
+            heap.set(i, p);
+            index.put(p, i);
+            i = parent;
+        }
+        heap.set(i, node);
+        index.put(node, i);
+    }
+
+    /**
+     * Move the node at the given position down until the heap is valid.
+     * @param i - The position.
+     */
+    private void sift_down(int i) {
+        int size = heap.size();
+        T node = heap.get(i);
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && comparator.compare(heap.get(child + 1), heap.get(child)) < 0) {
+                child++;
+            }
+            T c = heap.get(child);
+            if (comparator.compare(c, node) >= 0) {
+                break;
+            }
+            heap.set(i, c);
+            index.put(c, i);
+            i = child;
+        }
+        heap.set(i, node);
+        index.put(node, i);
+    }
+}
@@ -0,0 +1,112 @@
+package utility;
+
+import java.util.*;
+import java.awt.geom.*;
+import problem.*;
+
+/**
+ * This class is an occupancy map of the static obstacles.
+ * The workspace is cut into coarse blocks of unit step cells, and a summed
+ * area table over the blocks answers if a rectangle is clear of all static
+ * obstacles in constant time.
+ * A block is marked if it may touch an obstacle, so a clear answer is
+ * always right, and only the other answers need exact geometry.
+ */
+public class ObstacleMap implements Utility {
+
+    /* Number of cells along each side. */
+    private static final int CELLS = (int) Math.round(1 / UNIT_STEP);
+
+    /* Number of cells along each side of a block. */
+    private static final int BLOCK = 10;
+
+    /* Number of blocks along each side. */
+    private static final int BLOCKS = CELLS / BLOCK;
+
+    /* Maps built so far, one per list of static obstacles, dropped with the list. */
+    private static final Map<List<StaticObstacle>, ObstacleMap> maps = new WeakHashMap<>();
+
+    /* Summed area table of occupied blocks, (BLOCKS + 1) by (BLOCKS + 1). */
+    private final int[] table;
+
+    /**
+     * Get the map of the given static obstacles, built once per list.
+     * @param staticObstacles - The static obstacles.
+     * @return - The map.
+     */
+    public static ObstacleMap of(List<StaticObstacle> staticObstacles) {
+        synchronized (maps) {
+            ObstacleMap map = maps.get(staticObstacles);
+            if (map == null) {
+                map = new ObstacleMap(staticObstacles);
+                maps.put(staticObstacles, map);
+            }
+            return map;
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param staticObstacles - The static obstacles.
+     */
+    private ObstacleMap(List<StaticObstacle> staticObstacles) {
+        boolean[] blocks = new boolean[BLOCKS * BLOCKS];
+        for (StaticObstacle o : staticObstacles) {
+            Rectangle2D rect = o.getRect();
+            /* One cell of margin covers rounding at the cell borders. */
+            int x0 = Math.max(0, cell_of(rect.getMinX()) - 1);
+            int y0 = Math.max(0, cell_of(rect.getMinY()) - 1);
+            int x1 = Math.min(CELLS - 1, cell_of(rect.getMaxX()) + 1);
+            int y1 = Math.min(CELLS - 1, cell_of(rect.getMaxY()) + 1);
+            for (int by = y0 / BLOCK; y0 <= y1 && by <= y1 / BLOCK; by++) {
+                for (int bx = x0 / BLOCK; x0 <= x1 && bx <= x1 / BLOCK; bx++) {
+                    blocks[by * BLOCKS + bx] = true;
+                }
+            }
+        }
+        table = new int[(BLOCKS + 1) * (BLOCKS + 1)];
+        for (int by = 0; by < BLOCKS; by++) {
+            for (int bx = 0; bx < BLOCKS; bx++) {
+                table[(by + 1) * (BLOCKS + 1) + bx + 1] = (blocks[by * BLOCKS + bx] ? 1 : 0)
+                        + table[by * (BLOCKS + 1) + bx + 1]
+                        + table[(by + 1) * (BLOCKS + 1) + bx]
+                        - table[by * (BLOCKS + 1) + bx];
+            }
+        }
+    }
+
+    /**
+     * Get the cell of a coordinate.
+     * @param v - The coordinate.
+     * @return - The cell, may be outside the map.
+     */
+    private static int cell_of(double v) {
+        return (int) Math.floor(v / UNIT_STEP);
+    }
+
+    /**
+     * Clamp a cell to the map.
+     * @param c - The cell.
+     * @return - The clamped cell.
+     */
+    private static int clamp(int c) {
+        return Math.max(0, Math.min(CELLS - 1, c));
+    }
+
+    /**
+     * Check if a rectangle is clear of all static obstacles.
+     * @param x - X of the rectangle.
+     * @param y - Y of the rectangle.
+     * @param w - Width of the rectangle.
+     * @param h - Height of the rectangle.
+     * @return - True if it is certainly clear, false if it may touch an obstacle.
+     */
+    public boolean is_rect_free(double x, double y, double w, double h) {
+        int bx0 = clamp(cell_of(x)) / BLOCK;
+        int by0 = clamp(cell_of(y)) / BLOCK;
+        int bx1 = clamp(cell_of(x + w)) / BLOCK + 1;
+        int by1 = clamp(cell_of(y + h)) / BLOCK + 1;
+        return table[by1 * (BLOCKS + 1) + bx1] - table[by0 * (BLOCKS + 1) + bx1]
+                - table[by1 * (BLOCKS + 1) + bx0] + table[by0 * (BLOCKS + 1) + bx0] == 0;
+    }
+}
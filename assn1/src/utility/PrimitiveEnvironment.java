@@ -0,0 +1,792 @@
+package utility;
+
+import java.util.*;
+import java.awt.geom.*;
+import problem.*;
+
+/**
+ * This class represents an environment as flat arrays of primitives.
+ * It gives the same answers as the collision checks in Utility, but
+ * allocates nothing per check, so it is used on the hot path of astar.
+ * Moving objects and static obstacles are indexed by uniform grids, so a
+ * check only looks at the objects near the tested rectangle or robot.
+ * A child environment reuses the box grid of its parent as it is, and
+ * tests the few boxes moved since that grid was built on their own.
+ */
+public class PrimitiveEnvironment implements Utility {
+
+    /* Max number of boxes moved since the grid of an ancestor, more and the grid is built again. */
+    private static final int MAX_MOVED = 4;
+
+    /* No moved boxes. */
+    private static final int[] NONE = new int[0];
+
+    /* Number of moving objects. */
+    public final int size;
+
+    /* X of the bottom left corner of each moving object. */
+    public final double[] xs;
+
+    /* Y of the bottom left corner of each moving object. */
+    public final double[] ys;
+
+    /* Width of each moving object. */
+    public final double[] widths;
+
+    /* Number of static obstacles. */
+    public final int obstacleSize;
+
+    /* X of the bottom left corner of each static obstacle. */
+    private final double[] obstacleXs;
+
+    /* Y of the bottom left corner of each static obstacle. */
+    private final double[] obstacleYs;
+
+    /* Width of each static obstacle. */
+    private final double[] obstacleWidths;
+
+    /* Height of each static obstacle. */
+    private final double[] obstacleHeights;
+
+    /* 1 if the boxes are valid, -1 if not, 0 if unknown. Threads may race to compute the same value. */
+    private volatile int boxesValid;
+
+    /* Number of grid cells along each side. */
+    private final int cells;
+
+    /* Grid of static obstacles, shared by all environments derived from one. */
+    private final SpatialGrid obstacleGrid;
+
+    /* Occupancy map of static obstacles, used before the exact checks. */
+    private final ObstacleMap obstacleMap;
+
+    /* Grid of moving objects, built when first used or taken from the parent. */
+    private volatile SpatialGrid boxGrid;
+
+    /* Boxes at another place in the box grid, tested on their own by each lookup. */
+    private final int[] moved;
+
+    /**
+     * Constructor.
+     * @param environment - The environment.
+     */
+    public PrimitiveEnvironment(Environment environment) {
+        List<Box> movingObjects = environment.movingObjects;
+        size = movingObjects.size();
+        xs = new double[size];
+        ys = new double[size];
+        widths = new double[size];
+        for (int i = 0; i < size; i++) {
+            Box b = movingObjects.get(i);
+            xs[i] = b.getPos().getX();
+            ys[i] = b.getPos().getY();
+            widths[i] = b.getWidth();
+        }
+        List<StaticObstacle> staticObstacles = environment.staticObstacles;
+        obstacleSize = staticObstacles.size();
+        obstacleXs = new double[obstacleSize];
+        obstacleYs = new double[obstacleSize];
+        obstacleWidths = new double[obstacleSize];
+        obstacleHeights = new double[obstacleSize];
+        for (int i = 0; i < obstacleSize; i++) {
+            Rectangle2D rect = staticObstacles.get(i).getRect();
+            obstacleXs[i] = rect.getX();
+            obstacleYs[i] = rect.getY();
+            obstacleWidths[i] = rect.getWidth();
+            obstacleHeights[i] = rect.getHeight();
+        }
+        double maxWidth = 0;
+        for (int i = 0; i < size; i++) {
+            maxWidth = Math.max(maxWidth, widths[i]);
+        }
+        cells = SpatialGrid.cells_for(maxWidth);
+        obstacleMap = ObstacleMap.of(staticObstacles);
+        obstacleGrid = new SpatialGrid(cells, obstacleSize);
+        for (int o = 0; o < obstacleSize; o++) {
+            obstacleGrid.insert(o, obstacleXs[o], obstacleYs[o],
+                    obstacleXs[o] + obstacleWidths[o], obstacleYs[o] + obstacleHeights[o]);
+        }
+        moved = NONE;
+    }
+
+    /**
+     * Constructor for an environment that differs from its parent by one box.
+     * @param parent - The parent environment.
+     * @param index - The index of the moved box.
+     * @param x - The new x of the moved box.
+     * @param y - The new y of the moved box.
+     */
+    public PrimitiveEnvironment(PrimitiveEnvironment parent, int index, double x, double y) {
+        size = parent.size;
+        xs = parent.xs.clone();
+        ys = parent.ys.clone();
+        xs[index] = x;
+        ys[index] = y;
+        widths = parent.widths;
+        obstacleSize = parent.obstacleSize;
+        obstacleXs = parent.obstacleXs;
+        obstacleYs = parent.obstacleYs;
+        obstacleWidths = parent.obstacleWidths;
+        obstacleHeights = parent.obstacleHeights;
+        cells = parent.cells;
+        obstacleGrid = parent.obstacleGrid;
+        obstacleMap = parent.obstacleMap;
+        SpatialGrid grid = parent.boxGrid;
+        if (grid != null && parent.moved.length < MAX_MOVED) {
+            /* The grid of the parent as it is, with the moved box added to the ones tested on their own. */
+            boxGrid = grid;
+            moved = with(parent.moved, index);
+        } else {
+            moved = NONE;
+        }
+    }
+
+    /**
+     * Get the given boxes with one more box.
+     * @param boxes - The boxes.
+     * @param index - The box to add.
+     * @return - The boxes, the same array if the box is already in it.
+     */
+    private static int[] with(int[] boxes, int index) {
+        for (int i : boxes) {
+            if (i == index) {
+                return boxes;
+            }
+        }
+        int[] result = Arrays.copyOf(boxes, boxes.length + 1);
+        result[boxes.length] = index;
+        return result;
+    }
+
+    /**
+     * Check if a box is at another place in the box grid, so lookups skip it there.
+     * @param i - Index of the box.
+     * @return - True if moved, false otherwise.
+     */
+    private boolean is_moved(int i) {
+        for (int m : moved) {
+            if (m == i) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the grid of moving objects. Each object is registered with its
+     * rectangle grown by max error, which covers every rectangle tested against it.
+     * The moved boxes are not at their place in the grid, lookups test them on their own.
+     * @return - The grid of moving objects.
+     */
+    private SpatialGrid box_grid() {
+        SpatialGrid result = boxGrid;
+        if (result == null) {
+            synchronized (this) {
+                result = boxGrid;
+                if (result == null) {
+                    result = new SpatialGrid(cells, size);
+                    for (int i = 0; i < size; i++) {
+                        result.insert(i, xs[i] - MAX_ERROR, ys[i] - MAX_ERROR,
+                                xs[i] + widths[i] + MAX_ERROR, ys[i] + widths[i] + MAX_ERROR);
+                    }
+                    boxGrid = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check if two moving objects are the same rectangle.
+     * @param i - Index of object 1.
+     * @param j - Index of object 2.
+     * @return - True if they are the same, false otherwise.
+     */
+    private boolean same_box(int i, int j) {
+        return xs[i] == xs[j] && ys[i] == ys[j] && widths[i] == widths[j];
+    }
+
+    /**
+     * Check if a moving object, shrunk by max error, intersects a static obstacle.
+     * @param i - Index of the moving object.
+     * @return - True if it intersects, false otherwise.
+     */
+    private boolean box_hits_obstacle(int i) {
+        double cw = widths[i] - 2 * MAX_ERROR;
+        return rect_hits_obstacle(xs[i] + MAX_ERROR, ys[i] + MAX_ERROR, cw, cw);
+    }
+
+    /**
+     * Check if a moving object, shrunk by max error, intersects another one.
+     * @param i - Index of the moving object.
+     * @param countSame - If true, a second object at the same place also counts as a collision.
+     * @return - True if it intersects, false otherwise.
+     */
+    private boolean box_hits_box(int i, boolean countSame) {
+        SpatialGrid grid = box_grid();
+        double cx = xs[i] + MAX_ERROR;
+        double cy = ys[i] + MAX_ERROR;
+        double cw = widths[i] - 2 * MAX_ERROR;
+        int same = 0;
+        int gx1 = grid.cell_of(cx + cw);
+        int gy1 = grid.cell_of(cy + cw);
+        for (int gy = grid.cell_of(cy); gy <= gy1; gy++) {
+            for (int gx = grid.cell_of(cx); gx <= gx1; gx++) {
+                int[] items = grid.items(gx, gy);
+                int count = grid.count(gx, gy);
+                for (int k = 0; k < count; k++) {
+                    int j = items[k];
+                    if (is_moved(j) || !grid.is_first_cell(j, cx, cy, gx, gy)) {
+                        continue;
+                    }
+                    if (!same_box(i, j) && rect_intersects(cx, cy, cw, cw, xs[j], ys[j], widths[j], widths[j])) {
+                        return true;
+                    } else if (same_box(i, j)) {
+                        same++;
+                    }
+                    if (countSame && same > 1) {
+                        return true;
+                    }
+                }
+            }
+        }
+        for (int j : moved) {
+            if (!same_box(i, j) && rect_intersects(cx, cy, cw, cw, xs[j], ys[j], widths[j], widths[j])) {
+                return true;
+            } else if (same_box(i, j)) {
+                same++;
+            }
+            if (countSame && same > 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if the robot line intersects a static obstacle shrunk by max error.
+     * @param x1 - X of robot point 1.
+     * @param y1 - Y of robot point 1.
+     * @param x2 - X of robot point 2.
+     * @param y2 - Y of robot point 2.
+     * @return - True if it intersects, false otherwise.
+     */
+    private boolean line_hits_obstacle(double x1, double y1, double x2, double y2) {
+        double minX = Math.min(x1, x2);
+        double minY = Math.min(y1, y2);
+        if (obstacleMap.is_rect_free(minX, minY, Math.max(x1, x2) - minX, Math.max(y1, y2) - minY)) {
+            return false;
+        }
+        int gx1 = obstacleGrid.cell_of(Math.max(x1, x2));
+        int gy1 = obstacleGrid.cell_of(Math.max(y1, y2));
+        for (int gy = obstacleGrid.cell_of(Math.min(y1, y2)); gy <= gy1; gy++) {
+            for (int gx = obstacleGrid.cell_of(Math.min(x1, x2)); gx <= gx1; gx++) {
+                int[] items = obstacleGrid.items(gx, gy);
+                int count = obstacleGrid.count(gx, gy);
+                for (int k = 0; k < count; k++) {
+                    int o = items[k];
+                    if (rect_intersects_line(obstacleXs[o] + MAX_ERROR, obstacleYs[o] + MAX_ERROR,
+                            obstacleWidths[o] - 2 * MAX_ERROR, obstacleHeights[o] - 2 * MAX_ERROR, x1, y1, x2, y2)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if the robot line intersects a moving object shrunk by max error.
+     * @param skip - Index of an object not to test, -1 to test all.
+     * @param x1 - X of robot point 1.
+     * @param y1 - Y of robot point 1.
+     * @param x2 - X of robot point 2.
+     * @param y2 - Y of robot point 2.
+     * @return - True if it intersects, false otherwise.
+     */
+    private boolean line_hits_box(int skip, double x1, double y1, double x2, double y2) {
+        SpatialGrid grid = box_grid();
+        int gx1 = grid.cell_of(Math.max(x1, x2));
+        int gy1 = grid.cell_of(Math.max(y1, y2));
+        for (int gy = grid.cell_of(Math.min(y1, y2)); gy <= gy1; gy++) {
+            for (int gx = grid.cell_of(Math.min(x1, x2)); gx <= gx1; gx++) {
+                int[] items = grid.items(gx, gy);
+                int count = grid.count(gx, gy);
+                for (int k = 0; k < count; k++) {
+                    int i = items[k];
+                    if (i != skip && !is_moved(i) && box_hits_line(i, x1, y1, x2, y2)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        for (int i : moved) {
+            if (i != skip && box_hits_line(i, x1, y1, x2, y2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if the robot line intersects one moving object shrunk by max error.
+     * @param i - Index of the moving object.
+     * @param x1 - X of robot point 1.
+     * @param y1 - Y of robot point 1.
+     * @param x2 - X of robot point 2.
+     * @param y2 - Y of robot point 2.
+     * @return - True if it intersects, false otherwise.
+     */
+    private boolean box_hits_line(int i, double x1, double y1, double x2, double y2) {
+        double cw = widths[i] - 2 * MAX_ERROR;
+        return rect_intersects_line(xs[i] + MAX_ERROR, ys[i] + MAX_ERROR, cw, cw, x1, y1, x2, y2);
+    }
+
+    /**
+     * Check box in collision mode, same as noCollisionForBoxStrictWithoutFeedback.
+     * @return - True if no collision, false otherwise.
+     */
+    public boolean no_collision_for_boxes() {
+        double bx = 0 - MAX_ERROR;
+        double bw = 1 + 2 * MAX_ERROR;
+        for (int i = 0; i < size; i++) {
+            if (!rect_contains(bx, bx, bw, bw, xs[i], ys[i], widths[i], widths[i])) {
+                return false;
+            }
+            if (box_hits_box(i, false) || box_hits_obstacle(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check the part of noCollisionForAll that does not depend on the robot.
+     * The result is computed once per environment.
+     * @return - True if no collision, false otherwise.
+     */
+    private boolean boxes_valid() {
+        if (boxesValid == 0) {
+            boxesValid = check_boxes() ? 1 : -1;
+        }
+        return boxesValid > 0;
+    }
+
+    /**
+     * Check all moving objects are inside the border and do not overlap
+     * each other or the static obstacles.
+     * @return - True if no collision, false otherwise.
+     */
+    private boolean check_boxes() {
+        double bx = 0 - MAX_ERROR;
+        double bw = 1 + 2 * MAX_ERROR;
+        for (int i = 0; i < size; i++) {
+            if (!rect_contains(bx, bx, bw, bw, xs[i], ys[i], widths[i], widths[i])) {
+                return false;
+            }
+            if (box_hits_box(i, true) || box_hits_obstacle(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check current if current state has collision, same as noCollisionForAll.
+     * @param previous - The environment before this one, used for gap sliding.
+     * @param robot - Robot config.
+     * @param width - Robot width.
+     * @return - True if no collision, false otherwise.
+     */
+    public boolean no_collision_for_all(PrimitiveEnvironment previous, RobotConfig robot, double width) {
+        double cos = Math.cos(robot.getOrientation());
+        double sin = Math.sin(robot.getOrientation());
+        double x1 = robot.getPos().getX() - cos * width * 0.5;
+        double y1 = robot.getPos().getY() - sin * width * 0.5;
+        double x2 = robot.getPos().getX() + cos * width * 0.5;
+        double y2 = robot.getPos().getY() + sin * width * 0.5;
+
+        if (line_hits_obstacle(x1, y1, x2, y2)) {
+            return false;
+        }
+        double bx = 0 - MAX_ERROR;
+        double bw = 1 + 2 * MAX_ERROR;
+        if (!rect_contains(bx, bx, bw, bw, x1, y1) || !rect_contains(bx, bx, bw, bw, x2, y2)) {
+            return false;
+        }
+        if (!boxes_valid()) {
+            return false;
+        }
+        if (line_hits_box(-1, x1, y1, x2, y2)) {
+            return false;
+        }
+        return previous.no_gap_sliding(width, robot, x1, y1, x2, y2, 0, 0);
+    }
+
+    /**
+     * Check if the robot can translate in a straight line without collision.
+     * Both ends get the full check, and the parallelogram swept between them
+     * is tested once against all boxes and static obstacles. A move along the
+     * robot's own axis sweeps a line, which is checked for gap sliding as a whole.
+     * @param from - The start robot config.
+     * @param to - The end robot config, with the same orientation.
+     * @param width - Robot width.
+     * @return - True if no collision, false otherwise.
+     */
+    public boolean no_collision_for_translation(RobotConfig from, RobotConfig to, double width) {
+        if (!no_collision_for_all(this, from, width) || !no_collision_for_all(this, to, width)) {
+            return false;
+        }
+        double cos = Math.cos(from.getOrientation());
+        double sin = Math.sin(from.getOrientation());
+        double x1 = from.getPos().getX() - cos * width * 0.5;
+        double y1 = from.getPos().getY() - sin * width * 0.5;
+        double x2 = from.getPos().getX() + cos * width * 0.5;
+        double y2 = from.getPos().getY() + sin * width * 0.5;
+        double dx = to.getPos().getX() - from.getPos().getX();
+        double dy = to.getPos().getY() - from.getPos().getY();
+        double minX = Math.min(Math.min(x1, x2), Math.min(x1, x2) + dx);
+        double minY = Math.min(Math.min(y1, y2), Math.min(y1, y2) + dy);
+        double maxX = Math.max(Math.max(x1, x2), Math.max(x1, x2) + dx);
+        double maxY = Math.max(Math.max(y1, y2), Math.max(y1, y2) + dy);
+
+        if (!obstacleMap.is_rect_free(minX, minY, maxX - minX, maxY - minY)) {
+            for (int o = 0; o < obstacleSize; o++) {
+                if (sweep_intersects_rect(x1, y1, x2, y2, dx, dy, obstacleXs[o] + MAX_ERROR, obstacleYs[o] + MAX_ERROR,
+                        obstacleWidths[o] - 2 * MAX_ERROR, obstacleHeights[o] - 2 * MAX_ERROR)) {
+                    return false;
+                }
+            }
+        }
+        SpatialGrid grid = box_grid();
+        int gx1 = grid.cell_of(maxX);
+        int gy1 = grid.cell_of(maxY);
+        for (int gy = grid.cell_of(minY); gy <= gy1; gy++) {
+            for (int gx = grid.cell_of(minX); gx <= gx1; gx++) {
+                int[] items = grid.items(gx, gy);
+                int count = grid.count(gx, gy);
+                for (int k = 0; k < count; k++) {
+                    int i = items[k];
+                    double cw = widths[i] - 2 * MAX_ERROR;
+                    if (!is_moved(i) &&
+                            sweep_intersects_rect(x1, y1, x2, y2, dx, dy, xs[i] + MAX_ERROR, ys[i] + MAX_ERROR, cw, cw)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        for (int i : moved) {
+            double cw = widths[i] - 2 * MAX_ERROR;
+            if (sweep_intersects_rect(x1, y1, x2, y2, dx, dy, xs[i] + MAX_ERROR, ys[i] + MAX_ERROR, cw, cw)) {
+                return false;
+            }
+        }
+        if (Math.abs(dx * sin - dy * cos) < MAX_ERROR) {
+            return no_gap_sliding(width, from, x1, y1, x2, y2, dx, dy);
+        }
+        return true;
+    }
+
+    /**
+     * Check if the robot can rotate about its centre without collision.
+     * Both ends get the full check, and the disc swept by the robot is tested
+     * once against all boxes and static obstacles.
+     * @param from - The start robot config.
+     * @param to - The end robot config, at the same position.
+     * @param width - Robot width.
+     * @return - True if no collision, false otherwise.
+     */
+    public boolean no_collision_for_rotation(RobotConfig from, RobotConfig to, double width) {
+        if (!no_collision_for_all(this, from, width) || !no_collision_for_all(this, to, width)) {
+            return false;
+        }
+        double cx = from.getPos().getX();
+        double cy = from.getPos().getY();
+        double r = width * 0.5;
+        double bx = 0 - MAX_ERROR;
+        double bw = 1 + 2 * MAX_ERROR;
+        if (!rect_contains(bx, bx, bw, bw, cx - r, cy - r, 2 * r, 2 * r)) {
+            return false;
+        }
+        if (!obstacleMap.is_rect_free(cx - r, cy - r, 2 * r, 2 * r)) {
+            for (int o = 0; o < obstacleSize; o++) {
+                if (circle_intersects_rect(cx, cy, r, obstacleXs[o] + MAX_ERROR, obstacleYs[o] + MAX_ERROR,
+                        obstacleWidths[o] - 2 * MAX_ERROR, obstacleHeights[o] - 2 * MAX_ERROR)) {
+                    return false;
+                }
+            }
+        }
+        SpatialGrid grid = box_grid();
+        int gx1 = grid.cell_of(cx + r);
+        int gy1 = grid.cell_of(cy + r);
+        for (int gy = grid.cell_of(cy - r); gy <= gy1; gy++) {
+            for (int gx = grid.cell_of(cx - r); gx <= gx1; gx++) {
+                int[] items = grid.items(gx, gy);
+                int count = grid.count(gx, gy);
+                for (int k = 0; k < count; k++) {
+                    int i = items[k];
+                    double cw = widths[i] - 2 * MAX_ERROR;
+                    if (!is_moved(i) && circle_intersects_rect(cx, cy, r, xs[i] + MAX_ERROR, ys[i] + MAX_ERROR, cw, cw)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        for (int i : moved) {
+            double cw = widths[i] - 2 * MAX_ERROR;
+            if (circle_intersects_rect(cx, cy, r, xs[i] + MAX_ERROR, ys[i] + MAX_ERROR, cw, cw)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if a child environment, where one box of this environment is moved,
+     * has collision. Same as noCollisionForAll from this environment to the
+     * child, but only the moved box and the robot are tested, and the moved box
+     * is tested along its whole swept rectangle.
+     * @param index - The index of the moved box.
+     * @param x - The new x of the moved box.
+     * @param y - The new y of the moved box.
+     * @param robot - Robot config.
+     * @param width - Robot width.
+     * @return - True if no collision, false otherwise.
+     */
+    public boolean no_collision_for_move(int index, double x, double y, RobotConfig robot, double width) {
+        if (!boxes_valid()) {
+            return false;
+        }
+        double cos = Math.cos(robot.getOrientation());
+        double sin = Math.sin(robot.getOrientation());
+        double x1 = robot.getPos().getX() - cos * width * 0.5;
+        double y1 = robot.getPos().getY() - sin * width * 0.5;
+        double x2 = robot.getPos().getX() + cos * width * 0.5;
+        double y2 = robot.getPos().getY() + sin * width * 0.5;
+
+        if (line_hits_obstacle(x1, y1, x2, y2)) {
+            return false;
+        }
+        double bx = 0 - MAX_ERROR;
+        double bw = 1 + 2 * MAX_ERROR;
+        if (!rect_contains(bx, bx, bw, bw, x1, y1) || !rect_contains(bx, bx, bw, bw, x2, y2)) {
+            return false;
+        }
+
+        /* The moved box at its new position. */
+        double w = widths[index];
+        if (!rect_contains(bx, bx, bw, bw, x, y, w, w)) {
+            return false;
+        }
+        double cw = w - 2 * MAX_ERROR;
+        if (rect_intersects_line(x + MAX_ERROR, y + MAX_ERROR, cw, cw, x1, y1, x2, y2)) {
+            return false;
+        }
+        if (line_hits_box(index, x1, y1, x2, y2)) {
+            return false;
+        }
+
+        /* The swept rectangle of the moved box, shrunk by max error. */
+        double minX = Math.min(xs[index], x);
+        double minY = Math.min(ys[index], y);
+        double sx = minX + MAX_ERROR;
+        double sy = minY + MAX_ERROR;
+        double sw = Math.max(xs[index], x) + w - minX - 2 * MAX_ERROR;
+        double sh = Math.max(ys[index], y) + w - minY - 2 * MAX_ERROR;
+        if (swept_hits_box(index, x, y, sx, sy, sw, sh) || rect_hits_obstacle(sx, sy, sw, sh)) {
+            return false;
+        }
+        return no_gap_sliding(width, robot, x1, y1, x2, y2, 0, 0);
+    }
+
+    /**
+     * Check if the swept rectangle of a moved box intersects any other box.
+     * @param index - The index of the moved box.
+     * @param x - The new x of the moved box.
+     * @param y - The new y of the moved box.
+     * @param sx - X of the swept rectangle.
+     * @param sy - Y of the swept rectangle.
+     * @param sw - Width of the swept rectangle.
+     * @param sh - Height of the swept rectangle.
+     * @return - True if it intersects, false otherwise.
+     */
+    private boolean swept_hits_box(int index, double x, double y, double sx, double sy, double sw, double sh) {
+        SpatialGrid grid = box_grid();
+        double w = widths[index];
+        int gx1 = grid.cell_of(sx + sw);
+        int gy1 = grid.cell_of(sy + sh);
+        for (int gy = grid.cell_of(sy); gy <= gy1; gy++) {
+            for (int gx = grid.cell_of(sx); gx <= gx1; gx++) {
+                int[] items = grid.items(gx, gy);
+                int count = grid.count(gx, gy);
+                for (int k = 0; k < count; k++) {
+                    int j = items[k];
+                    if (j != index && !is_moved(j) && swept_hits_one(j, x, y, w, sx, sy, sw, sh)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        for (int j : moved) {
+            if (j != index && swept_hits_one(j, x, y, w, sx, sy, sw, sh)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if the swept rectangle of a moved box intersects one other box.
+     * @param j - Index of the other box.
+     * @param x - The new x of the moved box.
+     * @param y - The new y of the moved box.
+     * @param w - Width of the moved box.
+     * @param sx - X of the swept rectangle.
+     * @param sy - Y of the swept rectangle.
+     * @param sw - Width of the swept rectangle.
+     * @param sh - Height of the swept rectangle.
+     * @return - True if it intersects, false otherwise.
+     */
+    private boolean swept_hits_one(int j, double x, double y, double w, double sx, double sy, double sw, double sh) {
+        if (rect_intersects(sx, sy, sw, sh, xs[j], ys[j], widths[j], widths[j])) {
+            return true;
+        }
+        /* The other box, shrunk, against the moved box at its new position. */
+        double cw = widths[j] - 2 * MAX_ERROR;
+        return rect_intersects(xs[j] + MAX_ERROR, ys[j] + MAX_ERROR, cw, cw, x, y, w, w);
+    }
+
+    /**
+     * Check if a rectangle intersects a static obstacle.
+     * @param rx - X of the rectangle.
+     * @param ry - Y of the rectangle.
+     * @param rw - Width of the rectangle.
+     * @param rh - Height of the rectangle.
+     * @return - True if it intersects, false otherwise.
+     */
+    private boolean rect_hits_obstacle(double rx, double ry, double rw, double rh) {
+        if (obstacleMap.is_rect_free(rx, ry, rw, rh)) {
+            return false;
+        }
+        int gx1 = obstacleGrid.cell_of(rx + rw);
+        int gy1 = obstacleGrid.cell_of(ry + rh);
+        for (int gy = obstacleGrid.cell_of(ry); gy <= gy1; gy++) {
+            for (int gx = obstacleGrid.cell_of(rx); gx <= gx1; gx++) {
+                int[] items = obstacleGrid.items(gx, gy);
+                int count = obstacleGrid.count(gx, gy);
+                for (int k = 0; k < count; k++) {
+                    int o = items[k];
+                    if (rect_intersects(rx, ry, rw, rh, obstacleXs[o], obstacleYs[o], obstacleWidths[o], obstacleHeights[o])) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Test if the robot is sliding, same as testGapSliding, at any point of a
+     * translation along its own axis. The robot slides if at one point it
+     * touches two boxes on opposite sides, so boxes met at different points
+     * of the translation are fine.
+     * @param width - The robot width.
+     * @param robot - The robot config.
+     * @param p1x - X of robot point 1.
+     * @param p1y - Y of robot point 1.
+     * @param p2x - X of robot point 2.
+     * @param p2y - Y of robot point 2.
+     * @param dx - X offset of the translation, 0 for a single config.
+     * @param dy - Y offset of the translation, 0 for a single config.
+     * @return - True if no sliding occurs, false otherwise.
+     */
+    private boolean no_gap_sliding(double width, RobotConfig robot, double p1x, double p1y, double p2x, double p2y,
+                                   double dx, double dy) {
+        double angleError = Math.asin((MAX_ERROR / 2) / (width / 2)) * 2;
+        double angle = normaliseAngle(robot.getOrientation());
+        double r1x, r1y, r2x, r2y;
+        boolean horizontal;
+        if (angle >= Math.PI * 4 - angleError || angle <= Math.PI * 2 + angleError) {
+            r1x = p1x + UNIT_STEP;
+            r1y = p1y;
+            r2x = p2x - UNIT_STEP;
+            r2y = p2y;
+            horizontal = true;
+        } else if (angle >= Math.PI * 2.5 - angleError && angle <= Math.PI * 2.5 + angleError) {
+            r1x = p1x;
+            r1y = p1y + UNIT_STEP;
+            r2x = p2x;
+            r2y = p2y - UNIT_STEP;
+            horizontal = false;
+        } else if (angle >= Math.PI * 3 - angleError && angle <= Math.PI * 3 + angleError) {
+            r1x = p2x + UNIT_STEP;
+            r1y = p2y;
+            r2x = p1x - UNIT_STEP;
+            r2y = p1y;
+            horizontal = true;
+        } else if (angle >= Math.PI * 3.5 - angleError && angle <= Math.PI * 3.5 + angleError) {
+            r1x = p2x;
+            r1y = p2y + UNIT_STEP;
+            r2x = p1x;
+            r2y = p1y - UNIT_STEP;
+            horizontal = false;
+        } else {
+            return true;
+        }
+        /* The robot along the axis, from r1 to r2, and the range of its shift. */
+        double lo = horizontal ? r1x : r1y;
+        double hi = horizontal ? r2x : r2y;
+        double shift = horizontal ? dx : dy;
+        double minShift = Math.min(0, shift);
+        double maxShift = Math.max(0, shift);
+        double l1x = horizontal ? r1x + minShift : r1x;
+        double l1y = horizontal ? r1y : r1y + minShift;
+        double l2x = horizontal ? r2x + maxShift : r2x;
+        double l2y = horizontal ? r2y : r2y + maxShift;
+
+        /* The boxes on the line, kept in an array only once a second one is met. */
+        int count = 0;
+        int first = -1;
+        int[] touched = null;
+        for (int i = 0; i < size; i++) {
+            double gw = widths[i] + 2 * MAX_ERROR;
+            if (rect_intersects_line(xs[i] - MAX_ERROR, ys[i] - MAX_ERROR, gw, gw, l1x, l1y, l2x, l2y)) {
+                if (count == 0) {
+                    first = i;
+                } else {
+                    if (touched == null) {
+                        touched = new int[size];
+                        touched[0] = first;
+                    }
+                    touched[count] = i;
+                }
+                count++;
+            }
+        }
+        if (count <= 1) {
+            return true;
+        }
+        for (int a = 0; a < count; a++) {
+            int i = touched[a];
+            double sideI = horizontal ? ys[i] + MAX_ERROR - r1y : xs[i] + MAX_ERROR - r1x;
+            double minI = (horizontal ? xs[i] : ys[i]) - MAX_ERROR;
+            double maxI = minI + widths[i] + 2 * MAX_ERROR;
+            for (int b = a + 1; b < count; b++) {
+                int j = touched[b];
+                double sideJ = horizontal ? ys[j] + MAX_ERROR - r1y : xs[j] + MAX_ERROR - r1x;
+                if (sideI * sideJ >= 0) {
+                    continue;
+                }
+                double minJ = (horizontal ? xs[j] : ys[j]) - MAX_ERROR;
+                double maxJ = minJ + widths[j] + 2 * MAX_ERROR;
+                /* The shifts at which the robot touches both boxes. */
+                double from = Math.max(Math.max(minI, minJ) - hi, minShift);
+                double to = Math.min(Math.min(maxI, maxJ) - lo, maxShift);
+                if (from <= to) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,151 @@
+package utility;
+
+import java.io.*;
+import java.util.*;
+import problem.*;
+
+/**
+ * This class is a route of the robot and the boxes, kept as primitives.
+ * Each step keeps the robot pose and the primitive environment of the boxes,
+ * which is shared by all steps taken in the same environment. A step of a
+ * push also keeps the pushed box and its offset. Nothing is formatted until
+ * the route is written.
+ */
+public class Route {
+
+    /* X, y and orientation of the robot in each step. */
+    private double[] robots;
+
+    /* The boxes of each step. */
+    private PrimitiveEnvironment[] environments;
+
+    /* The box pushed in each step, -1 for none. */
+    private int[] pushed;
+
+    /* The offset of the pushed box in each step, x then y. */
+    private double[] offsets;
+
+    /* Number of steps. */
+    private int size;
+
+    /**
+     * Constructor of an empty route.
+     */
+    public Route() {
+        robots = new double[3 * 16];
+        environments = new PrimitiveEnvironment[16];
+        pushed = new int[16];
+        offsets = new double[2 * 16];
+    }
+
+    /**
+     * Get the number of steps.
+     * @return - The number of steps.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Add a step.
+     * @param rc - The robot config.
+     * @param environment - The environment.
+     */
+    public void add(RobotConfig rc, Environment environment) {
+        add(rc.getPos().getX(), rc.getPos().getY(), rc.getOrientation(), environment);
+    }
+
+    /**
+     * Add a step.
+     * @param x - X of the robot.
+     * @param y - Y of the robot.
+     * @param angle - Orientation of the robot.
+     * @param environment - The environment.
+     */
+    public void add(double x, double y, double angle, Environment environment) {
+        add(x, y, angle, environment, -1, 0, 0);
+    }
+
+    /**
+     * Add a step of a push.
+     * @param x - X of the robot.
+     * @param y - Y of the robot.
+     * @param angle - Orientation of the robot.
+     * @param environment - The environment before the push.
+     * @param box - The index of the pushed box, -1 for none.
+     * @param dx - X offset of the pushed box.
+     * @param dy - Y offset of the pushed box.
+     */
+    public void add(double x, double y, double angle, Environment environment, int box, double dx, double dy) {
+        if (size == pushed.length) {
+            grow(size + 1);
+        }
+        robots[3 * size] = x;
+        robots[3 * size + 1] = y;
+        robots[3 * size + 2] = angle;
+        environments[size] = environment.get_primitive();
+        pushed[size] = box;
+        offsets[2 * size] = dx;
+        offsets[2 * size + 1] = dy;
+        size++;
+    }
+
+    /**
+     * Add all steps of another route.
+     * @param other - The other route.
+     */
+    public void add_all(Route other) {
+        if (size + other.size > pushed.length) {
+            grow(size + other.size);
+        }
+        System.arraycopy(other.robots, 0, robots, 3 * size, 3 * other.size);
+        System.arraycopy(other.environments, 0, environments, size, other.size);
+        System.arraycopy(other.pushed, 0, pushed, size, other.size);
+        System.arraycopy(other.offsets, 0, offsets, 2 * size, 2 * other.size);
+        size += other.size;
+    }
+
+    /**
+     * Write the number of steps and then one line per step, the robot pose
+     * followed by the centre of each box.
+     * @param writer - The writer.
+     * @throws IOException - When the writer fails.
+     */
+    public void write(RouteWriter writer) throws IOException {
+        writer.write_int(size);
+        writer.new_line();
+        for (int i = 0; i < size; i++) {
+            writer.write_fixed(robots[3 * i]);
+            writer.write_space();
+            writer.write_fixed(robots[3 * i + 1]);
+            writer.write_space();
+            writer.write_fixed(robots[3 * i + 2]);
+            PrimitiveEnvironment primitive = environments[i];
+            for (int j = 0; j < primitive.size; j++) {
+                double x = primitive.xs[j] + 0.5 * primitive.widths[j];
+                double y = primitive.ys[j] + 0.5 * primitive.widths[j];
+                if (j == pushed[i]) {
+                    x += offsets[2 * i];
+                    y += offsets[2 * i + 1];
+                }
+                writer.write_space();
+                writer.write_fixed(x);
+                writer.write_space();
+                writer.write_fixed(y);
+            }
+            writer.new_line();
+        }
+    }
+
+    /**
+     * Grow the arrays to hold at least the given number of steps.
+     * @param capacity - The number of steps.
+     */
+    private void grow(int capacity) {
+        int length = Math.max(capacity, 2 * pushed.length);
+        robots = Arrays.copyOf(robots, 3 * length);
+        environments = Arrays.copyOf(environments, length);
+        pushed = Arrays.copyOf(pushed, length);
+        offsets = Arrays.copyOf(offsets, 2 * length);
+    }
+}
@@ -0,0 +1,152 @@
+package utility;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/**
+ * This class writes a route file straight to a buffered channel.
+ * Numbers are written digit by digit into the buffer, so no string is
+ * built. Decimals are written with three digits and rounded half up on the
+ * shortest decimal of the value, which gives the same text as "%.3f".
+ */
+public class RouteWriter implements Closeable {
+
+    /* Size of the buffer in bytes. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /* Room left in the buffer before a number is written. */
+    private static final int NUMBER_SIZE = 32;
+
+    /* Bytes of the line separator. */
+    private static final byte[] NEW_LINE = System.lineSeparator().getBytes();
+
+    /* The file channel. */
+    private final FileChannel channel;
+
+    /* The buffer. */
+    private final ByteBuffer buffer;
+
+    /* Digits of the integer being written, last digit first. */
+    private final byte[] digits;
+
+    /**
+     * Constructor, the file is created or truncated.
+     * @param fileName - The file name.
+     * @throws IOException - When the file can't be opened.
+     */
+    public RouteWriter(String fileName) throws IOException {
+        channel = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        digits = new byte[20];
+    }
+
+    /**
+     * Write an integer.
+     * @param value - The integer.
+     * @throws IOException - When the buffer can't be flushed.
+     */
+    public void write_int(long value) throws IOException {
+        reserve();
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        put_digits(value);
+    }
+
+    /**
+     * Write a decimal with three digits after the point.
+     * @param value - The decimal.
+     * @throws IOException - When the buffer can't be flushed.
+     */
+    public void write_fixed(double value) throws IOException {
+        reserve();
+        if (Double.doubleToRawLongBits(value) < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        /* The floor may be one off, the comparison with the tie below is still right. */
+        double floor = Math.floor(value * 1000);
+        /* The double nearest to the tie above the floor, so the shortest decimal of
+         * a value is below the tie exactly when the value is below this double. */
+        double tie = (2 * floor + 1) / 2000;
+        long scaled = value < tie ? (long) floor : (long) floor + 1;
+        put_digits(scaled / 1000);
+        long fraction = scaled % 1000;
+        buffer.put((byte) '.');
+        buffer.put((byte) ('0' + fraction / 100));
+        buffer.put((byte) ('0' + fraction / 10 % 10));
+        buffer.put((byte) ('0' + fraction % 10));
+    }
+
+    /**
+     * Write a space.
+     * @throws IOException - When the buffer can't be flushed.
+     */
+    public void write_space() throws IOException {
+        reserve();
+        buffer.put((byte) ' ');
+    }
+
+    /**
+     * Write a line separator.
+     * @throws IOException - When the buffer can't be flushed.
+     */
+    public void new_line() throws IOException {
+        reserve();
+        buffer.put(NEW_LINE);
+    }
+
+    /**
+     * Flush the buffer and close the channel.
+     * @throws IOException - When the buffer can't be flushed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Put the digits of a non negative integer.
+     * @param value - The integer.
+     */
+    private void put_digits(long value) {
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (count > 0) {
+            buffer.put(digits[--count]);
+        }
+    }
+
+    /**
+     * Make room in the buffer for a number.
+     * @throws IOException - When the buffer can't be flushed.
+     */
+    private void reserve() throws IOException {
+        if (buffer.remaining() < NUMBER_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Write the buffer to the channel.
+     * @throws IOException - When the channel can't be written.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,13 @@
+package utility;
+
+/**
+ * Strategies for drawing random samples in RRT.
+ * UNIFORM : Uniform over the unit cube.
+ * GOAL_BIAS : The goal now and then, uniform otherwise.
+ * GAUSSIAN : A free sample close to a sample in collision, so near obstacle boundaries.
+ * BRIDGE : The free middle of two close samples in collision, so inside narrow passages.
+ * HALTON : The Halton low discrepancy sequence, deterministic.
+ */
+public enum SampleStrategy {
+    UNIFORM, GOAL_BIAS, GAUSSIAN, BRIDGE, HALTON;
+}
@@ -0,0 +1,180 @@
+package utility;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * This class draws samples from the unit cube for RRT, by a sample strategy.
+ * The planners scale and round the coordinates to their own c-space.
+ * The obstacle aware strategies ask the planner if a point is free, and
+ * fall back to a uniform sample when no point is found within a few tries.
+ */
+public class Sampler {
+
+    /* Probability of returning the goal for goal bias. */
+    private static final double GOAL_PROBABILITY = 0.1;
+
+    /* Standard deviation of the second point for gaussian and bridge. */
+    private static final double SIGMA = 0.05;
+
+    /* Tries of the obstacle aware strategies before falling back to uniform. */
+    private static final int TRIES = 20;
+
+    /* Bases of the Halton sequence, one per dimension. */
+    private static final int[] PRIMES = {2, 3, 5, 7, 11, 13, 17, 19};
+
+    /* Halton indices of a split sampler start this many after the previous one. */
+    private static final long HALTON_BLOCK = 1L << 20;
+
+    /* The sample strategy. */
+    private final SampleStrategy strategy;
+
+    /* Number of dimensions. */
+    private final int dimensions;
+
+    /* Random number generator. */
+    private final SplittableRandom random;
+
+    /* The next index of the Halton sequence. */
+    private long haltonIndex;
+
+    /* Number of samplers split from this one. */
+    private int splits;
+
+    /**
+     * Constructor.
+     * @param strategy - The sample strategy.
+     * @param dimensions - Number of dimensions, at most 8.
+     * @param random - Random number generator.
+     */
+    public Sampler(SampleStrategy strategy, int dimensions, SplittableRandom random) {
+        this.strategy = strategy;
+        this.dimensions = dimensions;
+        this.random = random;
+        haltonIndex = 1;
+    }
+
+    /**
+     * Get a sampler of the same strategy for a tree grown in parallel.
+     * Its Halton sequence starts at a later index, so the trees don't repeat each other.
+     * @param random - Random number generator of the new sampler.
+     * @return - The new sampler.
+     */
+    public Sampler split(SplittableRandom random) {
+        Sampler result = new Sampler(strategy, dimensions, random);
+        result.haltonIndex = haltonIndex + ++splits * HALTON_BLOCK;
+        return result;
+    }
+
+    /**
+     * Get the sample strategy.
+     * @return - The sample strategy.
+     */
+    public SampleStrategy strategy() {
+        return strategy;
+    }
+
+    /**
+     * Get the next sample.
+     * @param goal - The goal in the unit cube, used by goal bias.
+     * @param free - Returns true if a point is free, used by gaussian and bridge.
+     * @return - The sample in the unit cube.
+     */
+    public double[] next(double[] goal, Predicate<double[]> free) {
+        switch (strategy) {
+            case GOAL_BIAS:
+                if (random.nextDouble() < GOAL_PROBABILITY) {
+                    return goal.clone();
+                }
+                return uniform();
+            case GAUSSIAN:
+                for (int i = 0; i < TRIES; i++) {
+                    double[] first = uniform();
+                    double[] second = near(first);
+                    boolean firstFree = free.test(first);
+                    if (firstFree != free.test(second)) {
+                        return firstFree ? first : second;
+                    }
+                }
+                return uniform();
+            case BRIDGE:
+                for (int i = 0; i < TRIES; i++) {
+                    double[] first = uniform();
+                    if (free.test(first)) {
+                        continue;
+                    }
+                    double[] second = near(first);
+                    if (free.test(second)) {
+                        continue;
+                    }
+                    double[] middle = new double[dimensions];
+                    for (int d = 0; d < dimensions; d++) {
+                        middle[d] = (first[d] + second[d]) / 2;
+                    }
+                    if (free.test(middle)) {
+                        return middle;
+                    }
+                }
+                return uniform();
+            case HALTON:
+                double[] result = new double[dimensions];
+                for (int d = 0; d < dimensions; d++) {
+                    result[d] = radical_inverse(haltonIndex, PRIMES[d]);
+                }
+                haltonIndex++;
+                return result;
+            default:
+                return uniform();
+        }
+    }
+
+    /**
+     * Get a uniform sample.
+     * @return - The sample in the unit cube.
+     */
+    private double[] uniform() {
+        double[] result = new double[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            result[d] = random.nextDouble();
+        }
+        return result;
+    }
+
+    /**
+     * Get a gaussian sample around the given point.
+     * @param point - The given point.
+     * @return - The sample, clamped to the unit cube.
+     */
+    private double[] near(double[] point) {
+        double[] result = new double[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            result[d] = Math.min(1, Math.max(0, point[d] + SIGMA * gaussian()));
+        }
+        return result;
+    }
+
+    /**
+     * Get a standard normal number by the Box-Muller transform.
+     * @return - The number.
+     */
+    private double gaussian() {
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    /**
+     * Get the radical inverse of an index, the digits mirrored about the point.
+     * @param index - The index.
+     * @param base - The base.
+     * @return - The radical inverse, in [0, 1).
+     */
+    private static double radical_inverse(long index, int base) {
+        double result = 0;
+        double fraction = 1.0 / base;
+        while (index > 0) {
+            result += (index % base) * fraction;
+            index /= base;
+            fraction /= base;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+package utility;
+
+/**
+ * This class is a uniform grid over the unit workspace.
+ * Each item is a rectangle registered in every cell it covers, so a query
+ * only looks at the items near the query rectangle.
+ * Ids are small integers given by the caller.
+ */
+public class SpatialGrid {
+
+    /* Number of cells along each side. */
+    private final int cells;
+
+    /* The ids in each cell. */
+    private final int[][] items;
+
+    /* Number of ids in each cell. */
+    private final int[] counts;
+
+    /* Lower left corner of each id. */
+    private final double[] minXs;
+    private final double[] minYs;
+
+    /**
+     * Constructor.
+     * @param cells - Number of cells along each side.
+     * @param capacity - Max number of ids.
+     */
+    public SpatialGrid(int cells, int capacity) {
+        this.cells = cells;
+        items = new int[cells * cells][];
+        counts = new int[cells * cells];
+        minXs = new double[capacity];
+        minYs = new double[capacity];
+    }
+
+    /**
+     * Get the number of cells for items of the given size.
+     * @param itemSize - The typical size of an item.
+     * @return - Number of cells along each side.
+     */
+    public static int cells_for(double itemSize) {
+        if (itemSize <= 0) {
+            return 1;
+        }
+        return Math.max(1, Math.min(64, (int) (1 / itemSize)));
+    }
+
+    /**
+     * Get the cell column or row of a coordinate.
+     * @param v - The coordinate.
+     * @return - The cell, clamped to the grid.
+     */
+    public int cell_of(double v) {
+        int c = (int) Math.floor(v * cells);
+        if (c < 0) {
+            return 0;
+        }
+        if (c >= cells) {
+            return cells - 1;
+        }
+        return c;
+    }
+
+    /**
+     * Get the number of ids in a cell.
+     * @param cx - Cell column.
+     * @param cy - Cell row.
+     * @return - Number of ids.
+     */
+    public int count(int cx, int cy) {
+        return counts[cy * cells + cx];
+    }
+
+    /**
+     * Get the ids in a cell, only the first count(cx, cy) are valid.
+     * @param cx - Cell column.
+     * @param cy - Cell row.
+     * @return - The ids.
+     */
+    public int[] items(int cx, int cy) {
+        return items[cy * cells + cx];
+    }
+
+    /**
+     * Check if the given cell is where an item should be reported for a query,
+     * so an item covering several cells is reported only once.
+     * The cell is the one holding the lower left corner of the overlap.
+     * @param id - The item.
+     * @param minX - Min x of the query.
+     * @param minY - Min y of the query.
+     * @param cx - Cell column.
+     * @param cy - Cell row.
+     * @return - True if the item should be reported in this cell.
+     */
+    public boolean is_first_cell(int id, double minX, double minY, int cx, int cy) {
+        return cell_of(Math.max(minX, minXs[id])) == cx && cell_of(Math.max(minY, minYs[id])) == cy;
+    }
+
+    /**
+     * Add an item.
+     * @param id - The item.
+     * @param minX - Min x of the item.
+     * @param minY - Min y of the item.
+     * @param maxX - Max x of the item.
+     * @param maxY - Max y of the item.
+     */
+    public void insert(int id, double minX, double minY, double maxX, double maxY) {
+        minXs[id] = minX;
+        minYs[id] = minY;
+        int cx1 = cell_of(maxX);
+        int cy1 = cell_of(maxY);
+        for (int cy = cell_of(minY); cy <= cy1; cy++) {
+            for (int cx = cell_of(minX); cx <= cx1; cx++) {
+                int c = cy * cells + cx;
+                if (items[c] == null) {
+                    items[c] = new int[4];
+                } else if (counts[c] == items[c].length) {
+                    int[] larger = new int[2 * counts[c]];
+                    System.arraycopy(items[c], 0, larger, 0, counts[c]);
+                    items[c] = larger;
+                }
+                items[c][counts[c]++] = id;
+            }
+        }
+    }
+}
\ No newline at end of file
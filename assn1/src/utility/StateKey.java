@@ -0,0 +1,104 @@
+package utility;
+
+import java.util.*;
+import problem.*;
+
+/**
+ * This class represents a canonical key of a search state.
+ * Positions and angles are quantised to the unit step grid and packed
+ * four to a long, so hashing and equality agree and cost no tolerance checks.
+ */
+public class StateKey implements Utility {
+
+    /* Bits used by one quantised value. */
+    private static final int BITS = 16;
+
+    /* Values packed in one long. */
+    private static final int PER_WORD = 64 / BITS;
+
+    /* The packed values. */
+    private long[] words;
+
+    /* The hash code, computed once. */
+    private int hash;
+
+    /**
+     * Constructor for the positions of all given boxes.
+     * @param boxes - The boxes.
+     */
+    public StateKey(List<Box> boxes) {
+        int size = boxes.size();
+        words = new long[(2 * size + PER_WORD - 1) / PER_WORD];
+        for (int i = 0; i < size; i++) {
+            Box b = boxes.get(i);
+            put(2 * i, b.getPos().getX());
+            put(2 * i + 1, b.getPos().getY());
+        }
+        hash = Arrays.hashCode(words);
+    }
+
+    /**
+     * Constructor for the position of one box.
+     * @param box - The box.
+     */
+    public StateKey(Box box) {
+        words = new long[1];
+        put(0, box.getPos().getX());
+        put(1, box.getPos().getY());
+        hash = Long.hashCode(words[0]);
+    }
+
+    /**
+     * Constructor for a robot config.
+     * @param robot - The robot config.
+     */
+    public StateKey(RobotConfig robot) {
+        words = new long[1];
+        put(0, robot.getPos().getX());
+        put(1, robot.getPos().getY());
+        put(2, robot.getOrientation());
+        hash = Long.hashCode(words[0]);
+    }
+
+    /**
+     * Quantise a value to the unit step grid.
+     * @param value - The value.
+     * @return - The number of unit steps.
+     */
+    public static int quantise(double value) {
+        return (int) Math.round(value / UNIT_STEP);
+    }
+
+    /**
+     * Pack a quantised value into the key.
+     * @param i - The position of the value.
+     * @param value - The raw value.
+     */
+    private void put(int i, double value) {
+        long q = quantise(value) & ((1L << BITS) - 1);
+        words[i / PER_WORD] |= q << (BITS * (i % PER_WORD));
+    }
+
+    /**
+     * Get the hash code for this key.
+     * @return - The hash code.
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Check if this key equals to given object.
+     * @param o - The given object.
+     * @return - True if equals, false otherwise.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof StateKey) {
+            StateKey k = (StateKey) o;
+            return hash == k.hash && Arrays.equals(words, k.words);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,26 @@
+package utility;
+
+import java.util.concurrent.*;
+
+/**
+ * This class holds the pool the RRT planners grow their trees on.
+ * The pool has one daemon thread per core and is shared by all planners,
+ * so the trees of the box route and of every robot leg queue on it together
+ * and never take more threads than there are cores. A tree never submits
+ * work of its own, so a planner waiting on its trees can't deadlock the pool.
+ */
+public class TreePool {
+
+    /* The pool, one daemon thread per core. */
+    public static final ExecutorService POOL = Executors.newFixedThreadPool(Utility.PARALLEL_TREES, task -> {
+        Thread thread = new Thread(task, "rrt-tree");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor, not used.
+     */
+    private TreePool() {
+    }
+}
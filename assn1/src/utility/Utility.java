@@ -1,9 +1,9 @@
 package utility;
 
 import java.util.*;
+import java.util.function.*;
 import java.awt.geom.*;
 import problem.*;
-import robotRRT.*;
 import java.io.*;
 
 /**
@@ -17,6 +17,12 @@ public interface Utility {
     /* Weight of box distances in box heuristic. */
     double BOX_WEIGHT = 1000.0;
 
+    /* Weight of box moving distance in box path cost. */
+    double PATH_WEIGHT = 100.0;
+
+    /* Number of trees grown in parallel by the RRT planners. */
+    int PARALLEL_TREES = Math.max(1, Runtime.getRuntime().availableProcessors());
+
     /* Weight of distance in robot heuristic. */
     double DISTANCE_WEIGHT = 1.0;
 
@@ -99,6 +105,219 @@ public interface Utility {
                 rect.getWidth() + 2 * delta, rect.getHeight() + 2 * delta);
     }
 
+    /**
+     * Check if rectangle a intersects rectangle b, same as Rectangle2D.intersects.
+     * @param ax - X of rectangle a.
+     * @param ay - Y of rectangle a.
+     * @param aw - Width of rectangle a.
+     * @param ah - Height of rectangle a.
+     * @param bx - X of rectangle b.
+     * @param by - Y of rectangle b.
+     * @param bw - Width of rectangle b.
+     * @param bh - Height of rectangle b.
+     * @return - True if they intersect, false otherwise.
+     */
+    default boolean rect_intersects(double ax, double ay, double aw, double ah,
+                                    double bx, double by, double bw, double bh) {
+        if (aw <= 0 || ah <= 0 || bw <= 0 || bh <= 0) {
+            return false;
+        }
+        return bx + bw > ax && by + bh > ay && bx < ax + aw && by < ay + ah;
+    }
+
+    /**
+     * Check if rectangle a contains rectangle b, same as Rectangle2D.contains.
+     * @param ax - X of rectangle a.
+     * @param ay - Y of rectangle a.
+     * @param aw - Width of rectangle a.
+     * @param ah - Height of rectangle a.
+     * @param bx - X of rectangle b.
+     * @param by - Y of rectangle b.
+     * @param bw - Width of rectangle b.
+     * @param bh - Height of rectangle b.
+     * @return - True if a contains b, false otherwise.
+     */
+    default boolean rect_contains(double ax, double ay, double aw, double ah,
+                                  double bx, double by, double bw, double bh) {
+        if (aw <= 0 || ah <= 0 || bw <= 0 || bh <= 0) {
+            return false;
+        }
+        return bx >= ax && by >= ay && bx + bw <= ax + aw && by + bh <= ay + ah;
+    }
+
+    /**
+     * Check if rectangle contains a point, same as Rectangle2D.contains.
+     * @param ax - X of the rectangle.
+     * @param ay - Y of the rectangle.
+     * @param aw - Width of the rectangle.
+     * @param ah - Height of the rectangle.
+     * @param x - X of the point.
+     * @param y - Y of the point.
+     * @return - True if it contains the point, false otherwise.
+     */
+    default boolean rect_contains(double ax, double ay, double aw, double ah, double x, double y) {
+        return x >= ax && y >= ay && x < ax + aw && y < ay + ah;
+    }
+
+    /**
+     * Check if rectangle intersects a line, same as Rectangle2D.intersectsLine.
+     * @param rx - X of the rectangle.
+     * @param ry - Y of the rectangle.
+     * @param rw - Width of the rectangle.
+     * @param rh - Height of the rectangle.
+     * @param x1 - X of line point 1.
+     * @param y1 - Y of line point 1.
+     * @param x2 - X of line point 2.
+     * @param y2 - Y of line point 2.
+     * @return - True if they intersect, false otherwise.
+     */
+    default boolean rect_intersects_line(double rx, double ry, double rw, double rh,
+                                         double x1, double y1, double x2, double y2) {
+        int out1, out2;
+        if ((out2 = rect_outcode(rx, ry, rw, rh, x2, y2)) == 0) {
+            return true;
+        }
+        while ((out1 = rect_outcode(rx, ry, rw, rh, x1, y1)) != 0) {
+            if ((out1 & out2) != 0) {
+                return false;
+            }
+            if ((out1 & (Rectangle2D.OUT_LEFT | Rectangle2D.OUT_RIGHT)) != 0) {
+                double x = rx;
+                if ((out1 & Rectangle2D.OUT_RIGHT) != 0) {
+                    x += rw;
+                }
+                y1 = y1 + (x - x1) * (y2 - y1) / (x2 - x1);
+                x1 = x;
+            } else {
+                double y = ry;
+                if ((out1 & Rectangle2D.OUT_BOTTOM) != 0) {
+                    y += rh;
+                }
+                x1 = x1 + (y - y1) * (x2 - x1) / (y2 - y1);
+                y1 = y;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the outcode of a point to a rectangle, same as Rectangle2D.outcode.
+     * @param rx - X of the rectangle.
+     * @param ry - Y of the rectangle.
+     * @param rw - Width of the rectangle.
+     * @param rh - Height of the rectangle.
+     * @param x - X of the point.
+     * @param y - Y of the point.
+     * @return - The outcode.
+     */
+    default int rect_outcode(double rx, double ry, double rw, double rh, double x, double y) {
+        int out = 0;
+        if (rw <= 0) {
+            out |= Rectangle2D.OUT_LEFT | Rectangle2D.OUT_RIGHT;
+        } else if (x < rx) {
+            out |= Rectangle2D.OUT_LEFT;
+        } else if (x > rx + rw) {
+            out |= Rectangle2D.OUT_RIGHT;
+        }
+        if (rh <= 0) {
+            out |= Rectangle2D.OUT_TOP | Rectangle2D.OUT_BOTTOM;
+        } else if (y < ry) {
+            out |= Rectangle2D.OUT_TOP;
+        } else if (y > ry + rh) {
+            out |= Rectangle2D.OUT_BOTTOM;
+        }
+        return out;
+    }
+
+    /**
+     * Check if the parallelogram swept by segment (x1, y1)-(x2, y2) moving by (dx, dy)
+     * intersects a rectangle, by separating axis test. Touching counts as intersecting.
+     * @param x1 - X of segment point 1.
+     * @param y1 - Y of segment point 1.
+     * @param x2 - X of segment point 2.
+     * @param y2 - Y of segment point 2.
+     * @param dx - X of the movement.
+     * @param dy - Y of the movement.
+     * @param rx - X of the rectangle.
+     * @param ry - Y of the rectangle.
+     * @param rw - Width of the rectangle.
+     * @param rh - Height of the rectangle.
+     * @return - True if they intersect, false otherwise.
+     */
+    default boolean sweep_intersects_rect(double x1, double y1, double x2, double y2, double dx, double dy,
+                                          double rx, double ry, double rw, double rh) {
+        if (rw <= 0 || rh <= 0) {
+            return false;
+        }
+        /* Axis x and axis y. */
+        double minX = Math.min(Math.min(x1, x2), Math.min(x1 + dx, x2 + dx));
+        double maxX = Math.max(Math.max(x1, x2), Math.max(x1 + dx, x2 + dx));
+        double minY = Math.min(Math.min(y1, y2), Math.min(y1 + dy, y2 + dy));
+        double maxY = Math.max(Math.max(y1, y2), Math.max(y1 + dy, y2 + dy));
+        if (maxX < rx || minX > rx + rw || maxY < ry || minY > ry + rh) {
+            return false;
+        }
+        /* Normals of the segment and of the movement. */
+        return !separated_on_axis(y1 - y2, x2 - x1, x1, y1, x2, y2, dx, dy, rx, ry, rw, rh) &&
+                !separated_on_axis(-dy, dx, x1, y1, x2, y2, dx, dy, rx, ry, rw, rh);
+    }
+
+    /**
+     * Check if a swept parallelogram and a rectangle are separated on an axis.
+     * @param ax - X of the axis.
+     * @param ay - Y of the axis.
+     * @param x1 - X of segment point 1.
+     * @param y1 - Y of segment point 1.
+     * @param x2 - X of segment point 2.
+     * @param y2 - Y of segment point 2.
+     * @param dx - X of the movement.
+     * @param dy - Y of the movement.
+     * @param rx - X of the rectangle.
+     * @param ry - Y of the rectangle.
+     * @param rw - Width of the rectangle.
+     * @param rh - Height of the rectangle.
+     * @return - True if separated, false otherwise.
+     */
+    default boolean separated_on_axis(double ax, double ay, double x1, double y1, double x2, double y2,
+                                      double dx, double dy, double rx, double ry, double rw, double rh) {
+        if (ax == 0 && ay == 0) {
+            return false;
+        }
+        double p1 = ax * x1 + ay * y1;
+        double p2 = ax * x2 + ay * y2;
+        double d = ax * dx + ay * dy;
+        double pMin = Math.min(Math.min(p1, p2), Math.min(p1 + d, p2 + d));
+        double pMax = Math.max(Math.max(p1, p2), Math.max(p1 + d, p2 + d));
+        double r1 = ax * rx + ay * ry;
+        double r2 = ax * (rx + rw) + ay * ry;
+        double r3 = ax * rx + ay * (ry + rh);
+        double r4 = ax * (rx + rw) + ay * (ry + rh);
+        double rMin = Math.min(Math.min(r1, r2), Math.min(r3, r4));
+        double rMax = Math.max(Math.max(r1, r2), Math.max(r3, r4));
+        return pMax < rMin || rMax < pMin;
+    }
+
+    /**
+     * Check if a circle intersects a rectangle. Touching counts as intersecting.
+     * @param cx - X of the centre.
+     * @param cy - Y of the centre.
+     * @param radius - Radius of the circle.
+     * @param rx - X of the rectangle.
+     * @param ry - Y of the rectangle.
+     * @param rw - Width of the rectangle.
+     * @param rh - Height of the rectangle.
+     * @return - True if they intersect, false otherwise.
+     */
+    default boolean circle_intersects_rect(double cx, double cy, double radius,
+                                           double rx, double ry, double rw, double rh) {
+        if (rw <= 0 || rh <= 0) {
+            return false;
+        }
+        double nx = Math.max(rx, Math.min(cx, rx + rw));
+        double ny = Math.max(ry, Math.min(cy, ry + rh));
+        return (nx - cx) * (nx - cx) + (ny - cy) * (ny - cy) <= radius * radius;
+    }
+
     /**
      * Check if collision at same side.
      * @param line - Robot line.
@@ -311,9 +530,9 @@ public interface Utility {
     /**
      * Solve robot push route fast without ai.
      * @param action - The push action.
-     * @return - A list of robot route in string format.
+     * @param route - The route, the steps of the push are appended to it.
      */
-    default List<String> solve_robot_route_fast(Action action) {
+    default void solve_robot_route_fast(Action action, Route route) {
 
         Environment environment = action.environment;
         RobotConfig current = action.pushPosition;
@@ -321,7 +540,6 @@ public interface Utility {
         int movedBox = action.movedBox;
         Direction direction = action.direction;
 
-        List<String> finalRoute = new ArrayList<>();
         List<Box> allBoxes = environment.movingObjects;
         Point2D movedBoxBefore = allBoxes.get(movedBox).getPos();
 
@@ -336,7 +554,7 @@ public interface Utility {
         if (index == -1) {
             /* Something wrong */
             System.out.println("Something wrong.");
-            return null;
+            return;
         }
 
         int loopTime = 0;
@@ -356,73 +574,25 @@ public interface Utility {
                 break;
         }
 
-        String robotRoute;
-
+        double x = current.getPos().getX();
+        double y = current.getPos().getY();
+        double angle = current.getOrientation();
         for (int i = 0; i < loopTime + 1; i++) {
-            robotRoute = "";
             switch (direction) {
                 case UP:
-                    robotRoute = String.format("%.3f %.3f %.3f", current.getPos().getX(), current.getPos().getY() + i * 0.001, current.getOrientation());
-                    for (int j = 0; j < allBoxes.size(); j++) {
-                        double width = allBoxes.get(j).getWidth();
-                        if (j == index) {
-                            robotRoute = robotRoute.concat(String.format(" %.3f %.3f", movedBoxBefore.getX() + 0.5 * width, movedBoxBefore.getY() + 0.5 * width + i * 0.001));
-                        } else {
-                            robotRoute = robotRoute.concat(String.format(" %.3f %.3f", allBoxes.get(j).pos.getX() + 0.5 * width, allBoxes.get(j).pos.getY() + 0.5 * width));
-                        }
-                    }
+                    route.add(x, y + i * 0.001, angle, environment, index, 0, i * 0.001);
                     break;
                 case DOWN:
-                    robotRoute = String.format("%.3f %.3f %.3f", current.getPos().getX(), current.getPos().getY() - i * 0.001, current.getOrientation());
-                    for (int j = 0; j < allBoxes.size(); j++) {
-                        double width = allBoxes.get(j).getWidth();
-                        if (j == index) {
-                            robotRoute = robotRoute.concat(String.format(" %.3f %.3f", movedBoxBefore.getX() + 0.5 * width, movedBoxBefore.getY() + 0.5 * width - i * 0.001));
-                        } else {
-                            robotRoute = robotRoute.concat(String.format(" %.3f %.3f", allBoxes.get(j).pos.getX() + 0.5 * width, allBoxes.get(j).pos.getY() + 0.5 * width));
-                        }
-                    }
+                    route.add(x, y - i * 0.001, angle, environment, index, 0, -i * 0.001);
                     break;
                 case LEFT:
-                    robotRoute = String.format("%.3f %.3f %.3f", current.getPos().getX() - i * 0.001, current.getPos().getY(), current.getOrientation());
-                    for (int j = 0; j < allBoxes.size(); j++) {
-                        double width = allBoxes.get(j).getWidth();
-                        if (j == index) {
-                            robotRoute = robotRoute.concat(String.format(" %.3f %.3f", movedBoxBefore.getX() + 0.5 * width - i * 0.001, movedBoxBefore.getY() + 0.5 * width));
-                        } else {
-                            robotRoute = robotRoute.concat(String.format(" %.3f %.3f", allBoxes.get(j).pos.getX() + 0.5 * width, allBoxes.get(j).pos.getY() + 0.5 * width));
-                        }
-                    }
+                    route.add(x - i * 0.001, y, angle, environment, index, -i * 0.001, 0);
                     break;
                 case RIGHT:
-                    robotRoute = String.format("%.3f %.3f %.3f", current.getPos().getX() + i * 0.001, current.getPos().getY(), current.getOrientation());
-                    for (int j = 0; j < allBoxes.size(); j++) {
-                        double width = allBoxes.get(j).getWidth();
-                        if (j == index) {
-                            robotRoute = robotRoute.concat(String.format(" %.3f %.3f", movedBoxBefore.getX() + 0.5 * width + i * 0.001, movedBoxBefore.getY() + 0.5 * width));
-                        } else {
-                            robotRoute = robotRoute.concat(String.format(" %.3f %.3f", allBoxes.get(j).pos.getX() + 0.5 * width, allBoxes.get(j).pos.getY() + 0.5 * width));
-                        }
-                    }
+                    route.add(x + i * 0.001, y, angle, environment, index, i * 0.001, 0);
                     break;
             }
-            finalRoute.add(robotRoute);
-        }
-        return finalRoute;
-    }
-
-    /**
-     * Get the initial state of the game.
-     * @param environment - The environment.
-     * @param initial - The initial robot config.
-     * @return - A string of initial state.
-     */
-    default String get_initial_configuration(Environment environment, RobotConfig initial) {
-        String result = String.format("%.3f %.3f %.3f", initial.getPos().getX(), initial.getPos().getY(), initial.getOrientation());
-        for (Box b : environment.movingObjects) {
-            result = result.concat(String.format(" %.3f %.3f", b.getPos().getX() + 0.5 * b.getWidth(), b.getPos().getY() + 0.5 * b.getWidth()));
         }
-        return result;
     }
 
     /**
@@ -430,16 +600,9 @@ public interface Utility {
      * @param finalRoute - The final route to be written.
      * @param fileName - The file name.
      */
-    default void output_to_file(List<String> finalRoute, String fileName) {
-        try {
-            BufferedWriter bw = new BufferedWriter(new FileWriter(fileName));
-            bw.write(String.format("%d", finalRoute.size()));
-            bw.newLine();
-            for (String s : finalRoute) {
-                bw.write(s);
-                bw.newLine();
-            }
-            bw.close();
+    default void output_to_file(Route finalRoute, String fileName) {
+        try (RouteWriter writer = new RouteWriter(fileName)) {
+            finalRoute.write(writer);
         } catch (Exception e) {
             System.out.println(e.getMessage());
         }
@@ -463,20 +626,35 @@ public interface Utility {
     }
 
     /**
-     * Print samples to file "data.txt".
-     * @param graph - The samples.
+     * Shortcut a path by greedily skipping points. From each kept point, the
+     * skip is doubled while the straight move to the point skipped to is free,
+     * and the furthest free one is kept next.
+     * @param path - The path, the neighbouring points can already be moved between.
+     * @param straight - Returns true if the straight move between two points is free.
+     * @param <T> - The point type.
+     * @return - The shortcut path, with the same first and last point.
      */
-    default void print_data(List<RobotSample> graph) {
-        try {
-            BufferedWriter bw = new BufferedWriter(new FileWriter("data.txt"));
-            for (RobotSample rs : graph) {
-                bw.write(String.format("%.3f %.3f %.3f\n", rs.state.getPos().getX(), rs.state.getPos().getY(), rs.state.getOrientation()));
-                bw.flush();
+    default <T> List<T> shortcut_path(List<T> path, BiPredicate<T, T> straight) {
+        List<T> result = new ArrayList<>();
+        int size = path.size();
+        if (size == 0) {
+            return result;
+        }
+        int i = 0;
+        result.add(path.get(0));
+        while (i < size - 1) {
+            int next = i + 1;
+            for (int skip = 2; next < size - 1; skip *= 2) {
+                int j = Math.min(i + skip, size - 1);
+                if (!straight.test(path.get(i), path.get(j))) {
+                    break;
+                }
+                next = j;
             }
-            bw.close();
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
+            result.add(path.get(next));
+            i = next;
         }
+        return result;
     }
 
     /**